@@ -0,0 +1,304 @@
+package net.netconomy.tools.restflow.dsl
+
+import net.netconomy.tools.restflow.impl.LeaseGatingConnectionManager
+import net.netconomy.tools.restflow.impl.TimedDnsResolver
+import net.netconomy.tools.restflow.impl.TimedSocketFactories
+import org.apache.http.config.Registry
+import org.apache.http.config.RegistryBuilder
+import org.apache.http.conn.HttpClientConnectionManager
+import org.apache.http.conn.routing.HttpRoute
+import org.apache.http.conn.socket.ConnectionSocketFactory
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory
+import org.apache.http.impl.client.IdleConnectionEvictor
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager
+import org.apache.http.pool.PoolStats
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.ReentrantLock
+
+
+/**
+ * Configuration and state of the HTTP connection pool of a {@link RestFlow}.
+ * Configure it using {@link RestFlow#connectionPool(groovy.lang.Closure)
+ * connectionPool { }}, e.g. in a profile:
+ *
+ * <pre>
+ * connectionPool {
+ *     maxTotal 200
+ *     maxPerRoute 50
+ *     idleTimeout Duration.ofSeconds(30)
+ *     ttl Duration.ofMinutes(5)
+ * }
+ * </pre>
+ *
+ * <p>Durations may be given as {@code Duration} or as milliseconds. Changes
+ * to the limits apply immediately, changing the TTL replaces the pool, i.e.
+ * all pooled connections will be closed.
+ *
+ * <p>The pool is kept across {@link RestFlow#reset() resets}.
+ */
+class ConnectionPool implements Closeable {
+
+    static final int DEFAULT_MAX_TOTAL = 20
+    static final int DEFAULT_MAX_PER_ROUTE = 2
+    static final Duration DEFAULT_VALIDATE_AFTER_INACTIVITY = Duration.ofSeconds(2)
+
+    private static final Duration MAX_EVICTOR_INTERVAL = Duration.ofSeconds(5)
+
+    private final Lock lock = new ReentrantLock()
+    private final Registry<ConnectionSocketFactory> socketFactoryRegistry
+
+    private int maxTotal = DEFAULT_MAX_TOTAL
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE
+    private Duration idleTimeout = null
+    private Duration ttl = null
+    private Duration validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY
+
+    private PoolingHttpClientConnectionManager manager = null
+    private LeaseGatingConnectionManager gatingManager = null
+    private IdleConnectionEvictor evictor = null
+
+    ConnectionPool(SSLConnectionSocketFactory sslSocketFactory) {
+        socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create().
+                register(HTTP.Scheme.HTTP.uriScheme, new TimedSocketFactories.Plain()).
+                register(HTTP.Scheme.HTTPS.uriScheme, sslSocketFactory).
+                build()
+    }
+
+    /**
+     * Set the maximum number of connections in total.
+     */
+    void maxTotal(int maxTotal) {
+        setMaxTotal(maxTotal)
+    }
+
+    int getMaxTotal() {
+        return maxTotal
+    }
+
+    void setMaxTotal(int maxTotal) {
+        if (maxTotal <= 0) {
+            throw new IllegalArgumentException("Invalid maxTotal: $maxTotal")
+        }
+        lock.lock()
+        try {
+            this.maxTotal = maxTotal
+            manager?.maxTotal = maxTotal
+            gatingManager?.limitsChanged()
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Set the maximum number of connections per route (i.e. per host).
+     */
+    void maxPerRoute(int maxPerRoute) {
+        setMaxPerRoute(maxPerRoute)
+    }
+
+    int getMaxPerRoute() {
+        return maxPerRoute
+    }
+
+    void setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute <= 0) {
+            throw new IllegalArgumentException("Invalid maxPerRoute: $maxPerRoute")
+        }
+        lock.lock()
+        try {
+            this.maxPerRoute = maxPerRoute
+            manager?.defaultMaxPerRoute = maxPerRoute
+            gatingManager?.limitsChanged()
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Close connections that have been idle for longer than this. A
+     * background evictor will be started if set, {@code null} disables
+     * idle eviction.
+     */
+    void idleTimeout(Object idleTimeout) {
+        setIdleTimeout(toDuration(idleTimeout))
+    }
+
+    Duration getIdleTimeout() {
+        return idleTimeout
+    }
+
+    void setIdleTimeout(Duration idleTimeout) {
+        lock.lock()
+        try {
+            this.idleTimeout = positiveOrNull(idleTimeout)
+            if (manager != null) {
+                restartEvictor()
+            }
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Set the maximum time to live of connections, regardless of
+     * keep-alive. {@code null} means no limit. Changing the TTL replaces
+     * the pool.
+     */
+    void ttl(Object ttl) {
+        setTtl(toDuration(ttl))
+    }
+
+    Duration getTtl() {
+        return ttl
+    }
+
+    void setTtl(Duration ttl) {
+        ttl = positiveOrNull(ttl)
+        lock.lock()
+        try {
+            if (ttl != this.ttl) {
+                this.ttl = ttl
+                shutdownManager()
+            }
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Validate pooled connections before reuse if they've been inactive
+     * for longer than this (defaults to 2s). {@code null} disables
+     * validation.
+     */
+    void validateAfterInactivity(Object validateAfterInactivity) {
+        setValidateAfterInactivity(toDuration(validateAfterInactivity))
+    }
+
+    Duration getValidateAfterInactivity() {
+        return validateAfterInactivity
+    }
+
+    void setValidateAfterInactivity(Duration validateAfterInactivity) {
+        lock.lock()
+        try {
+            this.validateAfterInactivity = positiveOrNull(validateAfterInactivity)
+            manager?.validateAfterInactivity = toMillis(this.validateAfterInactivity, -1)
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * The total statistics (leased, pending, available and max connections).
+     */
+    PoolStats getTotalStats() {
+        return getManager().totalStats
+    }
+
+    /**
+     * The statistics (leased, pending, available and max connections) per
+     * route.
+     */
+    Map<HttpRoute, PoolStats> getRouteStats() {
+        def m = getManager()
+        Map<HttpRoute, PoolStats> stats = new LinkedHashMap<>()
+        m.routes.each {r -> stats.put(r, m.getStats(r))}
+        return stats.asImmutable()
+    }
+
+    /**
+     * The connection manager, created on demand. Note that the manager
+     * will be replaced when the TTL changes.
+     */
+    PoolingHttpClientConnectionManager getManager() {
+        lock.lock()
+        try {
+            if (manager == null) {
+                manager = new PoolingHttpClientConnectionManager(
+                        socketFactoryRegistry, null, null, TimedDnsResolver.INSTANCE,
+                        toMillis(ttl, -1), TimeUnit.MILLISECONDS)
+                manager.maxTotal = maxTotal
+                manager.defaultMaxPerRoute = maxPerRoute
+                manager.validateAfterInactivity = toMillis(validateAfterInactivity, -1)
+                gatingManager = new LeaseGatingConnectionManager(manager, {this.maxTotal}, {this.maxPerRoute})
+                restartEvictor()
+            }
+            return manager
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * The connection manager to be used by HTTP clients. Connections are
+     * only requested from the pool when the limits allow it, so threads
+     * waiting for a connection don't block inside HttpCore.
+     *
+     * @see LeaseGatingConnectionManager
+     */
+    HttpClientConnectionManager getConnectionManager() {
+        lock.lock()
+        try {
+            getManager()
+            return gatingManager
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    @Override
+    void close() {
+        lock.lock()
+        try {
+            shutdownManager()
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    @Override
+    String toString() {
+        "ConnectionPool{maxTotal=$maxTotal, maxPerRoute=$maxPerRoute, idleTimeout=$idleTimeout, ttl=$ttl, validateAfterInactivity=$validateAfterInactivity}"
+    }
+
+    private void restartEvictor() {
+        evictor?.shutdown()
+        evictor = null
+        if (idleTimeout != null || ttl != null) {
+            def interval = [idleTimeout, ttl, MAX_EVICTOR_INTERVAL].findAll().min()
+            evictor = new IdleConnectionEvictor(manager,
+                    interval.toMillis(), TimeUnit.MILLISECONDS,
+                    toMillis(idleTimeout, 0), TimeUnit.MILLISECONDS)
+            evictor.start()
+        }
+    }
+
+    private void shutdownManager() {
+        evictor?.shutdown()
+        evictor = null
+        manager?.shutdown()
+        manager = null
+        gatingManager = null
+    }
+
+    private static Duration toDuration(Object value) {
+        if (value == null || value instanceof Duration) {
+            return (Duration)value
+        } else if (value instanceof Number) {
+            return Duration.ofMillis(((Number)value).longValue())
+        } else {
+            throw new IllegalArgumentException("Cannot convert to duration: $value")
+        }
+    }
+
+    private static Duration positiveOrNull(Duration duration) {
+        duration == null || duration.negative || duration.zero ? null : duration
+    }
+
+    private static long toMillis(Duration duration, long fallback) {
+        duration == null ? fallback : duration.toMillis()
+    }
+}
@@ -1,6 +1,6 @@
 package net.netconomy.tools.restflow.dsl
 
-import org.apache.http.impl.client.BasicCookieStore
+import net.netconomy.tools.restflow.impl.ConcurrentCookieStore
 
 
 /**
@@ -13,7 +13,7 @@ class Cookies {
    * future. This provides access to the underlying store for now, but it
    * may be gone soon.
    */
-  final store = new BasicCookieStore()
+  final store = new ConcurrentCookieStore()
   boolean enabled = false
 
   void enable(boolean enabled = true) {this.enabled = enabled}
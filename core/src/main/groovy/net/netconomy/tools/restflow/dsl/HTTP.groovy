@@ -10,6 +10,7 @@ class HTTP {
 
     public static final Accept = 'Accept'
     public static final Authorization = 'Authorization'
+    public static final ContentType = 'Content-Type'
 
     public static final AnyType = '*/*'
     public static final JsonType = 'application/json'
@@ -0,0 +1,253 @@
+package net.netconomy.tools.restflow.dsl
+
+import net.netconomy.tools.restflow.impl.DslUtil
+import net.netconomy.tools.restflow.impl.RestDsl
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Semaphore
+import java.util.function.Supplier
+
+
+/**
+ * Collects the branches of a {@link RestFlow#parallel(java.util.Map,
+ * groovy.lang.Closure) parallel()} block. Every HTTP request method called
+ * directly in the block becomes a branch of its own, use {@link
+ * #branch(groovy.lang.Closure) branch()} for branches consisting of
+ * several steps:
+ *
+ * <pre>
+ * def responses = parallel(maxConcurrency: 10) {
+ *     products.each { GET("products/$it.code") }
+ *     branch {
+ *         POST('carts')
+ *         GET("carts/$response.json.code")
+ *     }
+ * }
+ * </pre>
+ *
+ * Each branch runs in a {@link RestFlow#fork() fork} of the flow, i.e. it
+ * has its own base request and response, cookies and connections are
+ * shared.
+ */
+class Parallel {
+
+    private final RestFlow flow
+    private final int maxConcurrency
+    private final List<Closure<Response>> branches = []
+
+    Parallel(RestFlow flow, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid maxConcurrency: $maxConcurrency")
+        }
+        this.flow = flow
+        this.maxConcurrency = maxConcurrency
+    }
+
+    /**
+     * Add a branch running the closure in a fork of the flow. The result
+     * of the branch is the last response of the fork.
+     */
+    void branch(@RestDsl(RestFlow) Closure closure) {
+        branches.add({RestFlow fork ->
+            DslUtil.invokeDelegateFirst(closure, fork)
+            fork.response
+        })
+    }
+
+    /**
+     * Add a branch submitting a HTTP GET request.
+     *
+     * @see RestFlow#GET(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void GET(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('GET', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP GET request.
+     *
+     * @see RestFlow#GET(java.lang.String, groovy.lang.Closure)
+     */
+    void GET(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('GET', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP PUT request.
+     *
+     * @see RestFlow#PUT(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void PUT(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('PUT', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP PUT request.
+     *
+     * @see RestFlow#PUT(java.lang.String, groovy.lang.Closure)
+     */
+    void PUT(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('PUT', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP POST request.
+     *
+     * @see RestFlow#POST(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void POST(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('POST', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP POST request.
+     *
+     * @see RestFlow#POST(java.lang.String, groovy.lang.Closure)
+     */
+    void POST(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('POST', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP DELETE request.
+     *
+     * @see RestFlow#DELETE(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void DELETE(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('DELETE', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP DELETE request.
+     *
+     * @see RestFlow#DELETE(java.lang.String, groovy.lang.Closure)
+     */
+    void DELETE(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('DELETE', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP HEAD request.
+     *
+     * @see RestFlow#HEAD(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void HEAD(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('HEAD', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP HEAD request.
+     *
+     * @see RestFlow#HEAD(java.lang.String, groovy.lang.Closure)
+     */
+    void HEAD(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('HEAD', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP OPTIONS request.
+     *
+     * @see RestFlow#OPTIONS(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void OPTIONS(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('OPTIONS', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP OPTIONS request.
+     *
+     * @see RestFlow#OPTIONS(java.lang.String, groovy.lang.Closure)
+     */
+    void OPTIONS(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('OPTIONS', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP TRACE request.
+     *
+     * @see RestFlow#TRACE(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void TRACE(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('TRACE', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP TRACE request.
+     *
+     * @see RestFlow#TRACE(java.lang.String, groovy.lang.Closure)
+     */
+    void TRACE(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('TRACE', null, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP PATCH request.
+     *
+     * @see RestFlow#PATCH(java.util.Map, java.lang.String, groovy.lang.Closure)
+     */
+    void PATCH(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('PATCH', query, path, closure)
+    }
+
+    /**
+     * Add a branch submitting a HTTP PATCH request.
+     *
+     * @see RestFlow#PATCH(java.lang.String, groovy.lang.Closure)
+     */
+    void PATCH(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        addRequest('PATCH', null, path, closure)
+    }
+
+    private void addRequest(String method, Map<String, ?> query, String path, Closure closure) {
+        branches.add({RestFlow fork ->
+            query == null ? fork.invokeMethod(method, [path, closure] as Object[])
+                          : fork.invokeMethod(method, [query, path, closure] as Object[])
+        })
+    }
+
+    /**
+     * Run all branches and wait for them to complete. If any branch
+     * fails, the exception of the first failed branch will be thrown after
+     * all branches completed.
+     *
+     * @return The responses of all branches in the order they were added.
+     */
+    List<Response> run() {
+        def permits = new Semaphore(maxConcurrency)
+        List<CompletableFuture<Response>> futures = []
+        try {
+            branches.each { branch ->
+                permits.acquire()
+                def fork = flow.fork()
+                futures.add(CompletableFuture.supplyAsync({
+                    try {
+                        branch.call(fork)
+                    } finally {
+                        permits.release()
+                        fork.close()
+                    }
+                } as Supplier<Response>, flow.executor))
+            }
+        } finally {
+            CompletableFuture.allOf(futures as CompletableFuture[]).handle {r, e -> null}.join()
+        }
+        Throwable failure = null
+        def responses = futures.collect {f ->
+            try {
+                f.join()
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.cause
+                } else {
+                    failure.addSuppressed(e.cause)
+                }
+                null
+            }
+        }
+        if (failure != null) {
+            throw failure
+        }
+        return responses
+    }
+}
@@ -3,7 +3,9 @@ package net.netconomy.tools.restflow.dsl
 import groovy.json.JsonBuilder
 import groovy.json.JsonSlurper
 import net.netconomy.tools.restflow.impl.Authentication
+import net.netconomy.tools.restflow.impl.EffectiveConfig
 import net.netconomy.tools.restflow.impl.MarkupBuilder
+import net.netconomy.tools.restflow.impl.ObservedMap
 import net.netconomy.tools.restflow.impl.RequestExecution
 import net.netconomy.tools.restflow.impl.UtfCharsets
 import org.apache.http.NameValuePair
@@ -13,6 +15,7 @@ import org.intellij.lang.annotations.Language
 
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.nio.file.Path
 
 
 /**
@@ -20,6 +23,7 @@ import java.nio.charset.StandardCharsets
  * as stack and coalesced before submission. Configurations override
  * configurations of parent requests, the final request path is built top
  * down using {@link RequestExecution#doBuildPath(java.util.List) buildPath()}.
+ * The coalesced configuration is cached, see {@link #effectiveConfig()}.
  *
  * @since 2018-10-12
  * @author Raffael Herzog (r.herzog@netconomy.net)
@@ -31,6 +35,9 @@ class RequestConfig {
 
     final RequestConfig parent
 
+    private volatile int modCount = 0
+    private volatile EffectiveConfig effectiveConfig = null
+
     Charset requestCharset
 
     HTTP.Scheme scheme
@@ -43,20 +50,75 @@ class RequestConfig {
     Charset charset = DEFAULT_CONTENT_CHARSET
     String content = null
     byte[] rawContent = null
+    Path contentFile = null
+    InputStream contentStream = null
+    Closure<?> contentWriter = null
 
-    final Map<String, Object> headers = [:]
-    final Map<String, Object> query = [:]
+    final Map<String, Object> headers = new ObservedMap<>({modified()})
+    final Map<String, Object> query = new ObservedMap<>({modified()})
 
     RequestConfig(RequestConfig parent = null, String path = null) {
         this.parent = parent
         this.path = path
     }
 
+    /**
+     * The number of modifications of the values inherited by child
+     * requests.
+     */
+    int getModCount() {
+        return modCount
+    }
+
+    /**
+     * The effective configuration of this request, i.e. the values
+     * coalesced with the parents. The result is cached until this request
+     * or one of its parents is modified.
+     */
+    EffectiveConfig effectiveConfig() {
+        def parentConfig = parent == null ? EffectiveConfig.EMPTY : parent.effectiveConfig()
+        def config = effectiveConfig
+        if (config == null || config.modCount != modCount || !config.parent.is(parentConfig)) {
+            config = new EffectiveConfig(this, parentConfig)
+            effectiveConfig = config
+        }
+        return config
+    }
+
+    private void modified() {
+        modCount++
+    }
+
+    void setRequestCharset(Charset requestCharset) {
+        this.requestCharset = requestCharset
+        modified()
+    }
+
+    void setScheme(HTTP.Scheme scheme) {
+        this.scheme = scheme
+        modified()
+    }
+
+    void setHost(String host) {
+        this.host = host
+        modified()
+    }
+
+    void setPath(String path) {
+        this.path = path
+        modified()
+    }
+
+    void setAuthentication(Authentication authentication) {
+        this.authentication = authentication
+        modified()
+    }
+
     /**
      * Set the scheme AKA protocol (HTTP(S)).
      */
     void scheme(HTTP.Scheme scheme) {
-        this.scheme = scheme
+        setScheme(scheme)
     }
 
     /**
@@ -65,9 +127,9 @@ class RequestConfig {
      * @see #scheme(HTTP.Scheme)
      */
     void http(String host = null) {
-        scheme = HTTP.Scheme.HTTP
+        setScheme(HTTP.Scheme.HTTP)
         if (host) {
-            this.host = host
+            setHost(host)
         }
     }
 
@@ -77,9 +139,9 @@ class RequestConfig {
      * @see #scheme(HTTP.Scheme)
      */
     void https(String host = null) {
-        scheme = HTTP.Scheme.HTTPS
+        setScheme(HTTP.Scheme.HTTPS)
         if (host) {
-            this.host = host
+            setHost(host)
         }
     }
 
@@ -87,37 +149,40 @@ class RequestConfig {
      * Set the hostname, an explicit port may optionally be specified using ':<port>'.
      */
     void host(String host) {
-        this.host = host
+        setHost(host)
     }
 
     /**
      * Set an OAuth bearer token.
      */
     void bearerAuth(String token) {
-        authentication = new Authentication(Authentication.Type.BEARER, token)
+        setAuthentication(new Authentication(Authentication.Type.BEARER, token))
     }
 
     /**
      * Set a basic auth username/password.
      */
     void basicAuth(String username, String password) {
-        authentication = new Authentication(Authentication.Type.BASIC, username + ':' + password)
+        setAuthentication(new Authentication(Authentication.Type.BASIC, username + ':' + password))
     }
 
     /**
      * Clear authentication info
      */
     void clearAuth() {
-        authentication = null
+        setAuthentication(null)
     }
 
     /**
-     * Set the path component.
+     * Set the path component. The path may contain variables like
+     * <code>{id}</code>, they'll be replaced by the query parameter with
+     * the same name.
      *
      * @see RequestExecution#doBuildPath(java.util.List)
+     * @see net.netconomy.tools.restflow.impl.PathTemplate
      */
     void path(String path) {
-        this.path = path
+        setPath(path)
     }
 
     /**
@@ -133,7 +198,7 @@ class RequestConfig {
      * encoding the URL. Defaults to UTF-8.
      */
     void requestCharset(Charset requestCharset) {
-        this.requestCharset = requestCharset
+        setRequestCharset(requestCharset)
     }
 
     /**
@@ -161,18 +226,78 @@ class RequestConfig {
      * Set the text content.
      */
     void content(String content) {
+        clearContent()
         this.content = content
-        this.rawContent = null
     }
 
     /**
      * Set the binary content.
      */
     void content(byte[] content) {
-        this.content = null
+        clearContent()
         this.rawContent = content
     }
 
+    /**
+     * Send the contents of a file. The file will be streamed, it's never
+     * loaded into memory.
+     */
+    void content(Path file) {
+        clearContent()
+        this.contentFile = file
+    }
+
+    /**
+     * Send the contents of a file. The file will be streamed, it's never
+     * loaded into memory.
+     */
+    void content(File file) {
+        content(file.toPath())
+    }
+
+    /**
+     * Send the content read from a stream. The stream will be closed after
+     * the request has been sent. Note that a stream can only be sent once.
+     */
+    void content(InputStream content) {
+        clearContent()
+        this.contentStream = content
+    }
+
+    /**
+     * Generate the content by writing it to an {@link OutputStream}, e.g.
+     *
+     * <pre>
+     * content { OutputStream out ->
+     *     1000000.times { out << "line $it\n" }
+     * }
+     * </pre>
+     *
+     * <p>The content will be sent chunked while it's being written, it's
+     * never buffered completely. The closure may be called again if the
+     * request is sent again.
+     */
+    void content(Closure<?> writer) {
+        clearContent()
+        this.contentWriter = writer
+    }
+
+    /**
+     * Whether the content will be streamed, i.e. if it's a file, a stream
+     * or generated.
+     */
+    boolean isStreamedContent() {
+        contentFile != null || contentStream != null || contentWriter != null
+    }
+
+    private void clearContent() {
+        content = null
+        rawContent = null
+        contentFile = null
+        contentStream = null
+        contentWriter = null
+    }
+
     /**
      * Set the Accept header.
      */
@@ -249,7 +374,7 @@ class RequestConfig {
         }
         contentType = HTTP.JsonType
         charset = UtfCharsets.forceUtf(charset)
-        content = json
+        content(json)
     }
 
     /**
@@ -288,7 +413,7 @@ class RequestConfig {
      * Set XML source code. Also sets the content type to "application/xml".
      */
     void rawXml(@Language("XML") String xml) {
-        content = xml
+        content(xml)
         contentType = HTTP.XmlType
     }
 
@@ -299,7 +424,7 @@ class RequestConfig {
         List<NameValuePair> formData = []
         map.each {k, v -> formData.add(new BasicNameValuePair(k as String, v as String))}
         def entity = new UrlEncodedFormEntity(formData, charset)
-        content = new String(entity.content.bytes, charset)
+        content(new String(entity.content.bytes, charset))
         contentType = HTTP.UrlEncodedFormType
     }
 
@@ -309,7 +434,7 @@ class RequestConfig {
      * @see RequestExecution#doBuildPath(java.util.List)
      */
     String buildPath() {
-        RequestExecution.doBuildPath(RequestExecution.buildList(this, {it.path}))
+        effectiveConfig().path
     }
 
     private static void putAll(Map from, Map<String, Object> into) {
@@ -1,14 +1,22 @@
 package net.netconomy.tools.restflow.dsl
 
+import groovy.json.JsonParserType
 import groovy.json.JsonSlurper
+import groovy.transform.stc.ClosureParams
+import groovy.transform.stc.SimpleType
 import groovy.transform.ToString
 import groovy.xml.XmlSlurper
 import groovy.xml.slurpersupport.GPathResult
 import net.netconomy.tools.restflow.impl.CommLog
+import net.netconomy.tools.restflow.impl.ExchangeMetrics
 import net.netconomy.tools.restflow.impl.HttpBody
 import org.apache.http.HttpResponse
+import org.xml.sax.InputSource
 
+import java.nio.ByteBuffer
 import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.nio.file.Path
 
 
 /**
@@ -24,23 +32,53 @@ class Response {
     final String reasonPhrase
     final Map<String, String> headers
     final HttpBody body
+    /**
+     * The timings of the exchange or {@code null} if not available.
+     */
+    final Timings timings
+    /**
+     * Whether the request was sent on a pooled connection that has been
+     * used before, {@code null} if the transport doesn't tell (Java HTTP
+     * client).
+     */
+    final Boolean connectionReused
+
+    private final JsonParserType jsonParserType
+    private volatile Object json = null
+    private volatile GPathResult xml = null
 
     Response(RestFlow client, HttpResponse response) {
+        this(client, response.statusLine.statusCode, response.statusLine.reasonPhrase, headerMap(response),
+             response.entity ? HttpBody.read(response.entity.content, response.entity.contentType?.value,
+                                             client.defaultResponseCharset, client.responseSpillThreshold)
+                             : HttpBody.EMPTY)
+    }
+
+    Response(RestFlow client, int statusCode, String reasonPhrase, Map<String, String> headers, HttpBody body,
+             ExchangeMetrics metrics = null) {
         this.log = client.log
-        this.statusCode = response.statusLine.statusCode
-        this.reasonPhrase = response.statusLine.reasonPhrase
-        this.headers = new LinkedHashMap<String, String>().with {
-            response.allHeaders.each { h ->
-                put(h.name, h.value)
-            }
-            asImmutable()
+        this.statusCode = statusCode
+        this.reasonPhrase = reasonPhrase
+        this.headers = new LinkedHashMap<String, String>(headers).asImmutable()
+        this.body = body
+        this.timings = metrics != null ? new Timings(metrics) : null
+        this.connectionReused = metrics?.connectionReused
+        this.jsonParserType = client.jsonParserType
+        if (log.bodyDetail != CommLog.BodyDetail.NONE) {
+            log.recvBody(body)
+        }
+    }
+
+    private static Map<String, String> headerMap(HttpResponse response) {
+        Map<String, String> headers = new LinkedHashMap<>()
+        for (h in response.allHeaders) {
+            headers.put(h.name, h.value)
         }
-        body = response.entity ? new HttpBody(response.entity, client.defaultResponseCharset) : HttpBody.EMPTY
-        log.recvBody(body)
+        return headers
     }
 
     boolean getHasContent() {
-        return rawContent != null && rawContent.length
+        return body.contentLength > 0
     }
 
     String getContentType() {
@@ -51,20 +89,102 @@ class Response {
         return body.charset
     }
 
+    /**
+     * The length of the content in bytes.
+     */
+    long getLength() {
+        return body.contentLength
+    }
+
+    /**
+     * A copy of the raw content, use {@link #getByteBuffer()} or {@link
+     * #stream(groovy.lang.Closure)} to avoid copying large bodies.
+     */
     byte[] getRawContent() {
         return body.rawContent
     }
 
+    /**
+     * A read-only view of the raw content. Keep the response reachable
+     * while using the buffer, see {@link HttpBody#asByteBuffer()}.
+     */
+    ByteBuffer getByteBuffer() {
+        return body.asByteBuffer()
+    }
+
     String getContent() {
         return body.content
     }
 
+    /**
+     * Whether the body has been written to a temporary file because it's
+     * larger than {@link RestFlow#getResponseSpillThreshold() the
+     * threshold}.
+     */
+    boolean getSpilled() {
+        return body.spilled
+    }
+
+    /**
+     * Read the raw content from a stream. Use this for large responses
+     * together with {@link RestFlow#setResponseSpillThreshold(long)
+     * responseSpillThreshold}, the content will be read from the
+     * temporary file with bounded memory.
+     *
+     * @return The result of the closure.
+     */
+    <T> T stream(@ClosureParams(value = SimpleType, options = 'java.io.InputStream') Closure<T> closure) {
+        body.openStream().withStream {closure.call(it)}
+    }
+
+    /**
+     * Save the raw content to a file, an existing file will be replaced.
+     */
+    void saveTo(Path file) {
+        body.saveTo(file)
+    }
+
+    /**
+     * Save the raw content to a file, an existing file will be replaced.
+     */
+    void saveTo(File file) {
+        saveTo(file.toPath())
+    }
+
+    /**
+     * The content parsed as JSON using the flow's {@link
+     * RestFlow#getJsonParserType() parser type}. The content is parsed
+     * once on first access, the result is shared by subsequent calls.
+     */
     Object getJson() {
-        return new JsonSlurper().parseText(content)
+        def result = json
+        if (result == null) {
+            result = body.openStream().withStream {
+                // JSON is UTF by spec, fall back to UTF-8 for unknown types
+                new JsonSlurper().setType(jsonParserType).parse(it, (body.charset ?: StandardCharsets.UTF_8).name())
+            }
+            json = result
+        }
+        return result
     }
 
+    /**
+     * The content parsed as XML. The content is parsed once on first
+     * access, the result is shared by subsequent calls.
+     */
     GPathResult getXml() {
-        return new XmlSlurper().parseText(content)
+        def result = xml
+        if (result == null) {
+            result = body.openStream().withStream {
+                def source = new InputSource(it)
+                if (body.charset) {
+                    source.encoding = body.charset.name()
+                }
+                new XmlSlurper().parse(source)
+            }
+            xml = result
+        }
+        return result
     }
 
 }
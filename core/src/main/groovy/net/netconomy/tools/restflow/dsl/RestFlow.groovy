@@ -1,21 +1,25 @@
 package net.netconomy.tools.restflow.dsl
 
+import groovy.json.JsonParserType
 import net.netconomy.tools.restflow.impl.*
 import org.apache.http.client.CookieStore
-import org.apache.http.client.config.CookieSpecs
-import org.apache.http.client.methods.*
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory
-import org.apache.http.impl.client.CloseableHttpClient
-import org.apache.http.impl.client.HttpClients
-import org.apache.http.ssl.SSLContextBuilder
-import org.apache.http.ssl.TrustStrategy
 
+import javax.net.ssl.HostnameVerifier
 import java.awt.*
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
-import java.security.cert.CertificateException
-import java.security.cert.X509Certificate
 import java.util.List
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.ReentrantLock
 
 
 /**
@@ -25,26 +29,45 @@ import java.util.List
  * @since 2018-10-14
  * @author Raffael Herzog (r.herzog@netconomy.net)
  */
-class RestFlow {
+class RestFlow implements Closeable {
 
     private static final Object GLOBAL_LOCK = new Object()
     private static volatile RestFlow GLOBAL = null
 
     private final ProfileLoader profileLoader
-    private final CloseableHttpClient httpBackend
+    private final Lock lock = new ReentrantLock()
+    private final Map<String, HttpTransport> transports = new HashMap<>()
+    private HttpTransport transport = null
+    private ExecutorService executor = null
+    private boolean ownExecutor = false
+    private boolean virtualThreads = VirtualThreads.enabledByDefault
+    private final boolean forked
+
+    final Cookies cookies
 
-    final Cookies cookies = new Cookies()
+    /**
+     * The HTTP connection pool of the Apache transport.
+     *
+     * @see #connectionPool(groovy.lang.Closure)
+     */
+    final ConnectionPool connectionPool
     /**
      * @deprecated Use {@link #cookies} instead.
      */
     @Deprecated
-    final CookieStore cookieStore = cookies.store
+    final CookieStore cookieStore
 
     /**
      * A list of {@link PreRequestHandler}s that may modify the request
      * configuration before each HTTP request.
      */
-    final List<PreRequestHandler> preRequestHandlers = new ArrayList<>()
+    final List<PreRequestHandler> preRequestHandlers
+
+    /**
+     * A list of {@link RequestListener}s that get notified about each
+     * completed HTTP exchange.
+     */
+    final List<RequestListener> requestListeners
 
     /**
      * Allows access to the this instance by a different name. Useful in
@@ -68,6 +91,27 @@ class RestFlow {
      */
     Charset defaultResponseCharset
 
+    /**
+     * Response bodies larger than this number of bytes will be written to
+     * a temporary file instead of being kept in memory, -1 (the default)
+     * to keep all bodies in memory. Spilled bodies are loaded only on
+     * request, use {@link Response#stream(groovy.lang.Closure)} or {@link
+     * Response#saveTo(java.nio.file.Path)} to process them with bounded
+     * memory.
+     */
+    long responseSpillThreshold
+
+    /**
+     * The parser used for {@link Response#getJson()}. Defaults to {@code
+     * CHAR_BUFFER}, {@code INDEX_OVERLAY} is faster for large documents
+     * because it builds the values lazily, e.g.
+     *
+     * <pre>
+     * jsonParserType = groovy.json.JsonParserType.INDEX_OVERLAY
+     * </pre>
+     */
+    JsonParserType jsonParserType
+
     /**
      * The current base request.
      */
@@ -82,27 +126,80 @@ class RestFlow {
         this.profileLoader = profileLoader ?: new ProfileLoader(
                 Thread.currentThread().contextClassLoader ?: RestFlow.classLoader)
         this.log = log
-        SSLContextBuilder sslCtxBuilder = new SSLContextBuilder()
-        sslCtxBuilder.loadTrustMaterial(null, new TrustStrategy() {
-            @Override
-            boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-                return true
-            }
-        })
-        SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
-                sslCtxBuilder.build(), {n, session -> true})
-        httpBackend = HttpClients.custom().
-                setSSLSocketFactory(sslSocketFactory).
-                setDefaultRequestConfig(org.apache.http.client.config.RequestConfig.custom().
-                        setCookieSpec(CookieSpecs.STANDARD).
-                        build()).
-                disableRedirectHandling().
-                setDefaultCookieStore(NoCookiesStore.INSTANCE).
-                addInterceptorLast(new LogRequestInterceptor(this)).
-                build()
+        cookies = new Cookies()
+        cookieStore = cookies.store
+        preRequestHandlers = new CopyOnWriteArrayList<>()
+        requestListeners = new CopyOnWriteArrayList<>()
+        SSLConnectionSocketFactory sslSocketFactory = new TimedSocketFactories.Ssl(
+                HttpTransports.trustAllSslContext(), {n, session -> true} as HostnameVerifier)
+        connectionPool = new ConnectionPool(sslSocketFactory)
+        forked = false
         reset()
     }
 
+    private RestFlow(RestFlow parent) {
+        profileLoader = parent.profileLoader
+        log = parent.log
+        cookies = parent.cookies
+        cookieStore = cookies.store
+        preRequestHandlers = parent.preRequestHandlers
+        requestListeners = parent.requestListeners
+        connectionPool = parent.connectionPool
+        forked = true
+        transport = parent.getTransport()
+        executor = parent.getExecutor()
+        virtualThreads = parent.virtualThreads
+        ext.putAll(parent.ext)
+        defaultResponseCharset = parent.defaultResponseCharset
+        responseSpillThreshold = parent.responseSpillThreshold
+        jsonParserType = parent.jsonParserType
+        request = new RequestConfig(parent.request)
+        response = null
+    }
+
+    private RestFlow(RestFlow shared, CommLog log) {
+        profileLoader = shared.profileLoader
+        this.log = log
+        cookies = new Cookies()
+        cookieStore = cookies.store
+        preRequestHandlers = new CopyOnWriteArrayList<>()
+        requestListeners = new CopyOnWriteArrayList<>(shared.requestListeners)
+        connectionPool = shared.connectionPool
+        // the pool is owned by the shared instance
+        forked = true
+        virtualThreads = shared.virtualThreads
+        reset()
+    }
+
+    /**
+     * Create a fork of this RESTflow instance. The fork shares the cookies,
+     * pre-request handlers, request listeners, log, transport and connection
+     * pool with this instance. It has its own copy of {@link #ext}, its own
+     * response and a new base request on top of the current base request.
+     *
+     * <p>Forks are meant to be used by another thread, e.g. using {@link
+     * #parallel(java.util.Map, groovy.lang.Closure) parallel()}. Note that
+     * the parent's base requests must not be changed while forks are
+     * running.
+     */
+    RestFlow fork() {
+        new RestFlow(this)
+    }
+
+    /**
+     * Create a new RESTflow instance that only shares the profile loader,
+     * the connection pool and the request listeners with this instance.
+     * Everything else (cookies, base requests, {@link #ext}, pre-request
+     * handlers) starts fresh as in a new instance. Use this to run
+     * independent scripts concurrently without opening a new connection
+     * pool for each of them.
+     *
+     * <p>Closing the isolated instance doesn't close the connection pool.
+     */
+    RestFlow isolate(CommLog log = this.log) {
+        new RestFlow(this, log)
+    }
+
     /**
      * Get the global RESTflow instance creating it if necessary.
      */
@@ -155,11 +252,194 @@ class RestFlow {
         cookies.store.clear()
         ext.clear()
         defaultResponseCharset = StandardCharsets.UTF_8
+        responseSpillThreshold = -1
+        jsonParserType = JsonParserType.CHAR_BUFFER
         request = new RequestConfig()
         response = null
+        lock.lock()
+        try {
+            transport = null
+        } finally {
+            lock.unlock()
+        }
         profileLoader.applyAuto(this)
     }
 
+    /**
+     * Whether asynchronous requests and parallel branches run on virtual
+     * threads (Java 21+). Defaults to the system property {@value
+     * VirtualThreads#VIRTUAL_THREADS_PROPERTY}.
+     */
+    boolean getVirtualThreads() {
+        return virtualThreads
+    }
+
+    /**
+     * Enable or disable virtual threads. This replaces the default
+     * executor, an executor set explicitly will be kept.
+     *
+     * @throws UnsupportedOperationException If virtual threads are not
+     * available.
+     */
+    void setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads) {
+            VirtualThreads.checkAvailable()
+        }
+        lock.lock()
+        try {
+            if (virtualThreads != this.virtualThreads && ownExecutor) {
+                executor.shutdown()
+                executor = null
+                ownExecutor = false
+            }
+            this.virtualThreads = virtualThreads
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * The executor used for asynchronous requests and parallel branches.
+     * Defaults to a cached pool of daemon threads or a virtual thread per
+     * task, if {@link #getVirtualThreads() virtual threads} are enabled.
+     */
+    ExecutorService getExecutor() {
+        lock.lock()
+        try {
+            if (executor == null) {
+                if (virtualThreads) {
+                    executor = VirtualThreads.newExecutor('restflow-async-')
+                } else {
+                    def count = new AtomicInteger()
+                    executor = Executors.newCachedThreadPool({Runnable r ->
+                        def t = new Thread(r, "restflow-async-${count.incrementAndGet()}")
+                        t.daemon = true
+                        t
+                    } as ThreadFactory)
+                }
+                ownExecutor = true
+            }
+            return executor
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Set the executor used for asynchronous requests. The executor won't
+     * be shut down when closing this RESTflow instance.
+     */
+    void setExecutor(ExecutorService executor) {
+        lock.lock()
+        try {
+            if (ownExecutor) {
+                this.executor.shutdown()
+            }
+            this.executor = executor
+            ownExecutor = false
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Close all connections and release all resources held by this RESTflow
+     * instance.
+     */
+    @Override
+    void close() {
+        lock.lock()
+        try {
+            transports.values().each {it.close()}
+            transports.clear()
+            transport = null
+            if (ownExecutor) {
+                executor.shutdown()
+                executor = null
+                ownExecutor = false
+            }
+        } finally {
+            lock.unlock()
+        }
+        if (!forked) {
+            // forks share the handlers with their parent
+            preRequestHandlers.each {
+                if (it instanceof ClosurePreRequestHandler) {
+                    it.clear()
+                }
+            }
+            connectionPool.close()
+        }
+    }
+
+    /**
+     * The HTTP transport used for requests.
+     *
+     * @see #transport(java.lang.String)
+     */
+    HttpTransport getTransport() {
+        lock.lock()
+        try {
+            if (transport == null) {
+                transport = transport(HttpTransports.defaultName)
+            }
+            return transport
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Select the HTTP transport by name: {@code 'apache'} (Apache HTTP
+     * client, default) or {@code 'jdk'} (Java 11 HTTP client with HTTP/2
+     * support).
+     *
+     * @return The transport.
+     *
+     * @see HttpTransports
+     */
+    HttpTransport transport(String name) {
+        lock.lock()
+        try {
+            transport = transports.computeIfAbsent(name, {HttpTransports.create(name, this)})
+            return transport
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Use the given HTTP transport. The transport won't be closed when
+     * closing this RESTflow instance.
+     */
+    void transport(HttpTransport transport) {
+        lock.lock()
+        try {
+            this.transport = transport
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    /**
+     * Configure the HTTP connection pool, e.g.:
+     *
+     * <pre>
+     * connectionPool {
+     *     maxTotal 200
+     *     maxPerRoute 50
+     *     idleTimeout Duration.ofSeconds(30)
+     * }
+     * </pre>
+     *
+     * @return The result of the closure.
+     *
+     * @see ConnectionPool
+     */
+    def <T> T connectionPool(@RestDsl(ConnectionPool) Closure<T> closure) {
+        DslUtil.invokeDelegateFirst(closure, connectionPool)
+    }
+
     /**
      * Apply the named extension to this RESTflow instance.
      *
@@ -174,16 +454,15 @@ class RestFlow {
     /**
      * Add a pre-request handler to this RESTflow instance.
      *
+     * <p>The closure is reused for later requests: closures or lazy
+     * GStrings created in it must not be used after it returns, they would
+     * resolve against the configuration of another request or none at all.
+     *
      * @param closure The closure to be executed before each request; the
      * delegate will be set to the RESTflow instance, the request configuration of the request to be run is passed as parameter.
      */
     void preRequestHandler(@RestDsl(RequestConfig) Closure<?> closure) {
-        preRequestHandlers.add(new PreRequestHandler() {
-            @Override
-            void preRequest(RestFlow flow, RequestConfig requestConfig) {
-                DslUtil.invokeDelegateFirst(closure, requestConfig)
-            }
-        })
+        preRequestHandlers.add(new ClosurePreRequestHandler(closure))
     }
 
     /**
@@ -242,14 +521,16 @@ class RestFlow {
      * submit it as HTTP GET request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response GET(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpGetWithEntity()}, path, query, closure)
+        __executeRequest('GET', path, query, closure)
     }
 
     /**
@@ -263,7 +544,7 @@ class RestFlow {
      * @return The response.
      */
     Response GET(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpGetWithEntity()}, path, null, closure)
+        __executeRequest('GET', path, null, closure)
     }
 
     /**
@@ -271,14 +552,16 @@ class RestFlow {
      * submit it as HTTP PUT request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response PUT(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpPut()}, path, query, closure)
+        __executeRequest('PUT', path, query, closure)
     }
 
     /**
@@ -292,7 +575,7 @@ class RestFlow {
      * @return The response.
      */
     Response PUT(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpPut()}, path, null, closure)
+        __executeRequest('PUT', path, null, closure)
     }
 
     /**
@@ -300,14 +583,16 @@ class RestFlow {
      * submit it as HTTP POST request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response POST(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpPost()}, path, query, closure)
+        __executeRequest('POST', path, query, closure)
     }
 
     /**
@@ -321,7 +606,7 @@ class RestFlow {
      * @return The response.
      */
     Response POST(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpPost()}, path, null, closure)
+        __executeRequest('POST', path, null, closure)
     }
 
     /**
@@ -329,14 +614,16 @@ class RestFlow {
      * submit it as HTTP DELETE request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response DELETE(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpDeleteWithEntity()}, path, query, closure)
+        __executeRequest('DELETE', path, query, closure)
     }
 
     /**
@@ -350,7 +637,7 @@ class RestFlow {
      * @return The response.
      */
     Response DELETE(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpDeleteWithEntity()}, path, null, closure)
+        __executeRequest('DELETE', path, null, closure)
     }
 
     /**
@@ -358,14 +645,16 @@ class RestFlow {
      * submit it as HTTP HEAD request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response HEAD(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpHead()}, path, query, closure)
+        __executeRequest('HEAD', path, query, closure)
     }
 
     /**
@@ -379,7 +668,7 @@ class RestFlow {
      * @return The response.
      */
     Response HEAD(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpHead()}, path, null, closure)
+        __executeRequest('HEAD', path, null, closure)
     }
 
     /**
@@ -387,14 +676,16 @@ class RestFlow {
      * submit it as HTTP OPTIONS request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response OPTIONS(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpOptions()}, path, query, closure)
+        __executeRequest('OPTIONS', path, query, closure)
     }
 
     /**
@@ -408,7 +699,7 @@ class RestFlow {
      * @return The response.
      */
     Response OPTIONS(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpOptions()}, path, null, closure)
+        __executeRequest('OPTIONS', path, null, closure)
     }
 
     /**
@@ -416,14 +707,16 @@ class RestFlow {
      * submit it as HTTP TRACE request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response TRACE(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpTrace()}, path, query, closure)
+        __executeRequest('TRACE', path, query, closure)
     }
 
     /**
@@ -437,7 +730,7 @@ class RestFlow {
      * @return The response.
      */
     Response TRACE(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpTrace()}, path, null, closure)
+        __executeRequest('TRACE', path, null, closure)
     }
 
     /**
@@ -445,14 +738,16 @@ class RestFlow {
      * submit it as HTTP PATCH request. The response will be available as in
      * the field {@code response}.
      *
-     * @param query Query parameters.
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
      * @param path The path of the request.
      * @param closure The configuration clsoure
      *
      * @return The response.
      */
     Response PATCH(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpPatch()}, path, query, closure)
+        __executeRequest('PATCH', path, query, closure)
     }
 
     /**
@@ -466,16 +761,346 @@ class RestFlow {
      * @return The response.
      */
     Response PATCH(String path, @RestDsl(RequestConfig) Closure closure = null) {
-        __executeRequest({new HttpPatch()}, path, null, closure)
+        __executeRequest('PATCH', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP GET request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> GETAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('GET', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP GET request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> GETAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('GET', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP PUT request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> PUTAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('PUT', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP PUT request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> PUTAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('PUT', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP POST request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> POSTAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('POST', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP POST request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> POSTAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('POST', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP DELETE request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> DELETEAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('DELETE', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP DELETE request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> DELETEAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('DELETE', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP HEAD request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> HEADAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('HEAD', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP HEAD request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> HEADAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('HEAD', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP OPTIONS request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> OPTIONSAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('OPTIONS', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP OPTIONS request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> OPTIONSAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('OPTIONS', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP TRACE request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> TRACEAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('TRACE', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP TRACE request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> TRACEAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('TRACE', path, null, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP PATCH request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param query Query parameters. Parameters named like a variable in
+     *              the path (e.g. <code>'/carts/{id}'</code>) are used to
+     *              expand the path.
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> PATCHAsync(Map<String, ?> query, String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('PATCH', path, query, closure)
+    }
+
+    /**
+     * Push a new request on the stack, configure it using the closure and
+     * submit it asynchronously as HTTP PATCH request. The field
+     * {@code response} will <em>not</em> be updated, use {@link
+     * #await(java.util.concurrent.Future) await()} for this.
+     *
+     * @param path The path of the request.
+     * @param closure The configuration clsoure
+     *
+     * @return A future for the response.
+     */
+    CompletableFuture<Response> PATCHAsync(String path, @RestDsl(RequestConfig) Closure closure = null) {
+        __executeRequestAsync('PATCH', path, null, closure)
+    }
+
+    /**
+     * Wait for an asynchronous request to complete and make its response
+     * the current response.
+     *
+     * @return The response.
+     */
+    Response await(Future<Response> future) {
+        try {
+            response = future.get()
+        } catch (ExecutionException e) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**
+     * Wait for all given asynchronous requests to complete, the response of
+     * the last one will become the current response.
+     *
+     * @return The responses in the same order as the futures.
+     */
+    List<Response> awaitAll(Collection<? extends Future<Response>> futures) {
+        futures.collect {await(it)}
+    }
+
+    /**
+     * Run requests concurrently. Each HTTP request in the closure becomes a
+     * branch, that will be run in a {@link #fork() fork} of this flow,
+     * e.g.:
+     *
+     * <pre>
+     * def responses = parallel(maxConcurrency: 10) {
+     *     codes.each { GET("products/$it") }
+     * }
+     * </pre>
+     *
+     * The response of the last branch will become the current response.
+     *
+     * <p>Options:
+     *
+     * <ul>
+     *   <li><strong>maxConcurrency:</strong> The maximum number of branches
+     *     running at the same time (default: unlimited).</li>
+     * </ul>
+     *
+     * @return The responses of the branches in the order of the branches.
+     *
+     * @see Parallel
+     */
+    List<Response> parallel(Map<String, ?> options = [:], @RestDsl(Parallel) Closure closure) {
+        def parallel = new Parallel(this, (options?.maxConcurrency ?: Integer.MAX_VALUE) as int)
+        DslUtil.invokeDelegateFirst(closure, parallel)
+        def responses = parallel.run()
+        if (responses) {
+            response = responses.last()
+        }
+        return responses
+    }
+
+    private Response __executeRequest(String method, String path, Map<String, ?> query, Closure closure) {
+        response = RequestExecution.execute(this, method, __requestConfig(path, query, closure))
+    }
+
+    private CompletableFuture<Response> __executeRequestAsync(String method, String path, Map<String, ?> query, Closure closure) {
+        RequestExecution.executeAsync(this, method, __requestConfig(path, query, closure))
     }
 
-    private Response __executeRequest(Closure<? extends HttpRequestBase> createRequest, String path, Map<String, ?> query, Closure closure) {
+    private RequestConfig __requestConfig(String path, Map<String, ?> query, Closure closure) {
         RequestConfig request = new RequestConfig(request, path)
         if (query) {
             request.query query
         }
         DslUtil.invokeDelegateFirst(closure, request)
-        response = RequestExecution.execute(httpBackend, createRequest.call(), this, request)
+        return request
     }
 
     /**
@@ -0,0 +1,71 @@
+package net.netconomy.tools.restflow.dsl
+
+import groovy.transform.ToString
+import net.netconomy.tools.restflow.impl.ExchangeMetrics
+
+import java.time.Duration
+
+import static net.netconomy.tools.restflow.impl.ExchangeMetrics.Phase.*
+
+/**
+ * The timings of an HTTP exchange as measured by the transport, i.e.
+ * without the overhead of preparing the request. Phases that didn't apply
+ * (e.g. connecting if a pooled connection was reused) or that the
+ * transport can't measure are {@code null}.
+ *
+ * <pre>
+ * GET('/carts')
+ * assert response.timings.timeToFirstByte &lt; Duration.ofMillis(200)
+ * </pre>
+ */
+@ToString(includeNames = true, ignoreNulls = true)
+final class Timings {
+
+    /**
+     * Waiting for a connection from the pool.
+     */
+    final Duration queueWait
+    final Duration dns
+    /**
+     * Establishing the TCP connection, without TLS handshake.
+     */
+    final Duration connect
+    /**
+     * The TLS handshake.
+     */
+    final Duration tls
+    /**
+     * From the start of the exchange until the response headers have been
+     * received.
+     */
+    final Duration timeToFirstByte
+    /**
+     * From the start of the exchange until the body has been received.
+     */
+    final Duration total
+    /**
+     * The bytes sent including request line and headers, -1 if the
+     * transport doesn't report it (Java HTTP client).
+     */
+    final long bytesSent
+    /**
+     * The bytes received including status line and headers (counted in
+     * HTTP/1.1 format).
+     */
+    final long bytesReceived
+
+    Timings(ExchangeMetrics metrics) {
+        queueWait = duration(metrics.nanos(BLOCKED))
+        dns = duration(metrics.nanos(DNS))
+        connect = duration(metrics.nanos(CONNECT))
+        tls = duration(metrics.nanos(SSL))
+        timeToFirstByte = duration(metrics.headersNanos)
+        total = duration(metrics.totalNanos)
+        bytesSent = metrics.bytesSent
+        bytesReceived = metrics.bytesReceived
+    }
+
+    private static Duration duration(long nanos) {
+        nanos < 0 ? null : Duration.ofNanos(nanos)
+    }
+}
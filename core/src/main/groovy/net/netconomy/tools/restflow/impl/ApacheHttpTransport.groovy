@@ -0,0 +1,181 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.ConnectionPool
+import net.netconomy.tools.restflow.dsl.HTTP
+import net.netconomy.tools.restflow.dsl.Response
+import net.netconomy.tools.restflow.dsl.RestFlow
+import org.apache.http.HttpEntity
+import org.apache.http.HttpEntityEnclosingRequest
+import org.apache.http.HttpResponse
+import org.apache.http.client.config.CookieSpecs
+import org.apache.http.client.methods.*
+import org.apache.http.client.protocol.HttpClientContext
+import org.apache.http.conn.HttpClientConnectionManager
+import org.apache.http.entity.ByteArrayEntity
+import org.apache.http.entity.ContentType
+import org.apache.http.entity.FileEntity
+import org.apache.http.entity.InputStreamEntity
+import org.apache.http.entity.StringEntity
+import org.apache.http.impl.client.CloseableHttpClient
+import org.apache.http.impl.client.HttpClients
+import org.apache.http.protocol.BasicHttpContext
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.ReentrantLock
+import java.util.function.Supplier
+
+/**
+ * Transport using the Apache HTTP client 4.5 and the flow's {@link
+ * ConnectionPool}.
+ */
+class ApacheHttpTransport implements HttpTransport {
+
+    static final String NAME = 'apache'
+
+    private final ConnectionPool connectionPool
+
+    private final Lock lock = new ReentrantLock()
+    private CloseableHttpClient client = null
+    private HttpClientConnectionManager clientManager = null
+
+    ApacheHttpTransport(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool
+    }
+
+    @Override
+    String getName() {
+        return NAME
+    }
+
+    @Override
+    Response execute(RestFlow flow, PreparedRequest request) {
+        def httpContext = new BasicHttpContext()
+        httpContext.setAttribute(HttpClientContext.COOKIE_STORE,
+            flow.cookies.enabled ? flow.cookies.store : NoCookiesStore.INSTANCE)
+        httpContext.setAttribute(LogRequestInterceptor.FLOW_ATTRIBUTE, flow)
+        def httpRequest = createRequest(request)
+        def metrics = request.metrics
+        metrics.start()
+        // the client's hooks record the timings in the current metrics
+        return metrics.withCurrent {
+            client().execute(httpRequest, httpContext).withCloseable {HttpResponse resp ->
+                metrics.protocol = resp.statusLine.protocolVersion.toString()
+                RequestExecution.receive(flow, request, resp.statusLine.statusCode, resp.statusLine.reasonPhrase,
+                                         resp.allHeaders.collect {h -> new AbstractMap.SimpleImmutableEntry(h.name, h.value)}) {
+                    resp.entity ? ExchangeMetrics.timed(ExchangeMetrics.Phase.RECEIVE) {
+                        HttpBody.read(resp.entity.content, resp.entity.contentType?.value,
+                                      flow.defaultResponseCharset, flow.responseSpillThreshold)
+                    } : HttpBody.EMPTY
+                }
+            }
+        }
+    }
+
+    /**
+     * The Apache client is blocking, the exchange will be run using the
+     * flow's executor.
+     */
+    @Override
+    CompletableFuture<Response> executeAsync(RestFlow flow, PreparedRequest request) {
+        CompletableFuture.supplyAsync({execute(flow, request)} as Supplier<Response>, flow.executor)
+    }
+
+    @Override
+    void close() {
+        lock.lock()
+        try {
+            client?.close()
+            client = null
+            clientManager = null
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private CloseableHttpClient client() {
+        def manager = connectionPool.connectionManager
+        lock.lock()
+        try {
+            if (client == null || !clientManager.is(manager)) {
+                // the pool has been replaced, the old client doesn't own any resources
+                client?.close()
+                client = HttpClients.custom().
+                        setConnectionManager(manager).
+                        setConnectionManagerShared(true).
+                        setDefaultRequestConfig(org.apache.http.client.config.RequestConfig.custom().
+                                setCookieSpec(CookieSpecs.STANDARD).
+                                build()).
+                        disableRedirectHandling().
+                        setDefaultCookieStore(NoCookiesStore.INSTANCE).
+                        setRequestExecutor(new TimedRequestExecutor()).
+                        addInterceptorLast(new LogRequestInterceptor()).
+                        build()
+                clientManager = manager
+            }
+            return client
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private static HttpRequestBase createRequest(PreparedRequest request) {
+        HttpRequestBase httpRequest
+        switch (request.method) {
+        case 'GET':
+            httpRequest = new HttpGetWithEntity()
+            break
+        case 'DELETE':
+            httpRequest = new HttpDeleteWithEntity()
+            break
+        case 'PUT':
+            httpRequest = new HttpPut()
+            break
+        case 'POST':
+            httpRequest = new HttpPost()
+            break
+        case 'PATCH':
+            httpRequest = new HttpPatch()
+            break
+        case 'HEAD':
+            httpRequest = new HttpHead()
+            break
+        case 'OPTIONS':
+            httpRequest = new HttpOptions()
+            break
+        case 'TRACE':
+            httpRequest = new HttpTrace()
+            break
+        default:
+            throw new UnsupportedOperationException("Unsupported method: $request.method")
+        }
+        httpRequest.setURI(request.uri)
+        request.headers.each { k, v ->
+            httpRequest.setHeader(k, v)
+        }
+        if (request.authorization != null) {
+            httpRequest.addHeader(HTTP.Authorization, request.authorization)
+        }
+        HttpEntity entity = null
+        def config = request.config
+        if (config.content != null) {
+            entity = new StringEntity(config.content, (ContentType) request.contentType)
+        } else if (config.rawContent != null) {
+            entity = new ByteArrayEntity(config.rawContent, (ContentType) request.contentType)
+        } else if (config.contentFile != null) {
+            entity = new FileEntity(config.contentFile.toFile(), (ContentType) request.contentType)
+        } else if (config.contentStream != null) {
+            entity = new InputStreamEntity(config.contentStream, (ContentType) request.contentType)
+            entity.chunked = true
+        } else if (config.contentWriter != null) {
+            entity = new ContentWriterEntity(config.contentWriter, request.contentType)
+        }
+        if (entity != null) {
+            if (!(httpRequest instanceof HttpEntityEnclosingRequest)) {
+                throw new UnsupportedOperationException("Content not supported for ${httpRequest.getClass().getSimpleName()}")
+            }
+            httpRequest.entity = entity
+        }
+        return httpRequest
+    }
+}
@@ -0,0 +1,303 @@
+package net.netconomy.tools.restflow.impl
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.LockSupport
+import java.util.concurrent.locks.ReentrantLock
+
+/**
+ * A log that passes messages to another log in a background thread. The
+ * messages are queued in a bounded lock-free {@link RingBuffer}, the
+ * background thread writes them in batches and flushes the delegate after
+ * each batch if it's {@link Flushable}.
+ *
+ * <p>The delegate will be called by one thread only, its settings ({@link
+ * #isBrief() brief}, {@link #getBodyDetail() body detail}) are read
+ * directly. Messages logged after {@link #close()} are passed to the
+ * delegate synchronously. Errors writing a message are reported to the
+ * SLF4J logger of this class.
+ */
+class AsyncCommLog implements CommLog, Closeable, Flushable {
+
+    /**
+     * What to do if the buffer is full.
+     */
+    enum Overflow {
+        /**
+         * Wait until there's space in the buffer.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest messages to make space.
+         */
+        DROP_OLDEST,
+        /**
+         * Wait for every n-th message, drop the others.
+         */
+        SAMPLE
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncCommLog)
+
+    static final int DEFAULT_CAPACITY = 8192
+    static final int DEFAULT_SAMPLE_RATE = 10
+
+    private static final int BATCH_SIZE = 256
+    private static final long IDLE_PARK_NANOS = 1_000_000
+    private static final long FULL_PARK_NANOS = 50_000
+
+    final CommLog delegate
+    final Overflow overflow
+    final int sampleRate
+
+    private final RingBuffer<Closure<?>> buffer
+    private final Thread writer
+    private final AtomicLong dropped = new AtomicLong()
+    private final AtomicLong overflowCount = new AtomicLong()
+    private volatile boolean closed = false
+    /**
+     * Serialises the calls to the delegate after the writer has stopped.
+     */
+    private final Lock closedLock = new ReentrantLock()
+
+    AsyncCommLog(CommLog delegate, Overflow overflow = Overflow.BLOCK, int capacity = DEFAULT_CAPACITY,
+                 int sampleRate = DEFAULT_SAMPLE_RATE) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Invalid sample rate: $sampleRate")
+        }
+        this.delegate = delegate
+        this.overflow = overflow
+        this.sampleRate = sampleRate
+        buffer = new RingBuffer<>(capacity)
+        writer = new Thread(this.&writeLoop as Runnable, 'restflow-log')
+        writer.daemon = true
+        writer.start()
+    }
+
+    /**
+     * The number of messages dropped because the buffer was full and not
+     * reported yet.
+     */
+    long getDropped() {
+        dropped.get()
+    }
+
+    @Override
+    void setBrief(boolean brief) {
+        delegate.brief = brief
+    }
+
+    @Override
+    boolean isBrief() {
+        delegate.brief
+    }
+
+    @Override
+    boolean isEnabled(Level level) {
+        delegate.isEnabled(level)
+    }
+
+    @Override
+    BodyDetail getBodyDetail() {
+        delegate.bodyDetail
+    }
+
+    @Override
+    void info(Object... msg) {
+        enqueue {CommLog l -> l.info(msg)}
+    }
+
+    @Override
+    void warn(Object... msg) {
+        enqueue {CommLog l -> l.warn(msg)}
+    }
+
+    @Override
+    void activity(Object... msg) {
+        enqueue {CommLog l -> l.activity(msg)}
+    }
+
+    @Override
+    void pin(Object... msg) {
+        enqueue {CommLog l -> l.pin(msg)}
+    }
+
+    @Override
+    void send(Object... msg) {
+        enqueue {CommLog l -> l.send(msg)}
+    }
+
+    @Override
+    void sendBody(HttpBody body) {
+        enqueue {CommLog l -> l.sendBody(body)}
+    }
+
+    @Override
+    void recv(Object... msg) {
+        enqueue {CommLog l -> l.recv(msg)}
+    }
+
+    @Override
+    void recvBody(HttpBody body) {
+        enqueue {CommLog l -> l.recvBody(body)}
+    }
+
+    @Override
+    void debug(Object... msg) {
+        enqueue {CommLog l -> l.debug(msg)}
+    }
+
+    /**
+     * The delegate's verbose log, if it's not the delegate itself. Note
+     * that messages to a different verbose log bypass the buffer.
+     */
+    @Override
+    CommLog getVerbose() {
+        def verbose = delegate.verbose
+        verbose.is(delegate) ? this : verbose
+    }
+
+    /**
+     * Wait until all messages logged so far have been written.
+     */
+    @Override
+    void flush() {
+        if (closed) {
+            flushDelegate()
+            return
+        }
+        def latch = new CountDownLatch(1)
+        put {CommLog l -> latch.countDown()}
+        latch.await()
+    }
+
+    /**
+     * Write all pending messages and stop the background thread.
+     */
+    @Override
+    void close() {
+        if (closed) {
+            return
+        }
+        flush()
+        closed = true
+        LockSupport.unpark(writer)
+        writer.join()
+        writeClosed(null)
+    }
+
+    private void enqueue(Closure<?> message) {
+        if (closed) {
+            writeClosed(message)
+        } else if (!buffer.offer(message)) {
+            switch (overflow) {
+            case Overflow.BLOCK:
+                put(message)
+                break
+            case Overflow.DROP_OLDEST:
+                while (!buffer.offer(message)) {
+                    if (buffer.poll() != null) {
+                        dropped.incrementAndGet()
+                    } else {
+                        // another producer is about to publish its message
+                        Thread.onSpinWait()
+                    }
+                }
+                break
+            case Overflow.SAMPLE:
+                if (overflowCount.incrementAndGet() % sampleRate == 0) {
+                    put(message)
+                } else {
+                    dropped.incrementAndGet()
+                }
+                break
+            }
+        }
+        if (closed) {
+            // closed while queueing, the writer may have stopped without seeing the message
+            writeClosed(null)
+        }
+    }
+
+    private void put(Closure<?> message) {
+        while (!buffer.offer(message)) {
+            if (closed) {
+                writeClosed(message)
+                return
+            }
+            // the writer may be idle, don't wait for it to wake up by itself
+            LockSupport.unpark(writer)
+            LockSupport.parkNanos(this, FULL_PARK_NANOS)
+        }
+    }
+
+    private void writeLoop() {
+        List<Closure<?>> batch = new ArrayList<>(BATCH_SIZE)
+        while (true) {
+            if (buffer.drainTo(batch, BATCH_SIZE) == 0) {
+                reportDropped()
+                if (closed && buffer.size() == 0) {
+                    flushDelegate()
+                    return
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS)
+                continue
+            }
+            for (message in batch) {
+                write(message)
+            }
+            batch.clear()
+            flushDelegate()
+        }
+    }
+
+    /**
+     * Write the messages still in the buffer and the given message (if
+     * any) after the writer has stopped.
+     */
+    private void writeClosed(Closure<?> message) {
+        if (Thread.currentThread() != writer) {
+            writer.join()
+        }
+        closedLock.lock()
+        try {
+            Closure<?> pending
+            while ((pending = buffer.poll()) != null) {
+                write(pending)
+            }
+            reportDropped()
+            if (message != null) {
+                write(message)
+            }
+            flushDelegate()
+        } finally {
+            closedLock.unlock()
+        }
+    }
+
+    private void write(Closure<?> message) {
+        try {
+            message.call(delegate)
+        } catch (Exception e) {
+            // don't let a failing message stop the log
+            LOG.warn('Error writing log message', e)
+        }
+    }
+
+    private void reportDropped() {
+        long count = dropped.getAndSet(0)
+        if (count > 0) {
+            delegate.warn "$count log messages dropped"
+        }
+    }
+
+    private void flushDelegate() {
+        if (delegate instanceof Flushable) {
+            ((Flushable)delegate).flush()
+        }
+    }
+}
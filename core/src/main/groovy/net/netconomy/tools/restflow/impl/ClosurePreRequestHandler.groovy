@@ -0,0 +1,29 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.RequestConfig
+import net.netconomy.tools.restflow.dsl.RestFlow
+
+/**
+ * A pre-request handler calling a closure with the request configuration
+ * as delegate.
+ */
+final class ClosurePreRequestHandler implements PreRequestHandler {
+
+    private final DslUtil.ReusableClosure<?> closure
+
+    ClosurePreRequestHandler(Closure<?> closure) {
+        this.closure = DslUtil.reusableDelegateFirst(closure)
+    }
+
+    @Override
+    void preRequest(RestFlow flow, RequestConfig requestConfig) {
+        closure.call(requestConfig)
+    }
+
+    /**
+     * Drop the prepared copies of the closure.
+     */
+    void clear() {
+        closure.clear()
+    }
+}
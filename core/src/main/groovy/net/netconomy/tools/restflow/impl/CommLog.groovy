@@ -10,9 +10,48 @@ import java.util.stream.Stream
  */
 interface CommLog {
 
+    /**
+     * The kinds of messages a log may consume.
+     */
+    enum Level {
+        INFO, WARN, HTTP, DEBUG
+    }
+
+    /**
+     * How much of HTTP bodies a log consumes.
+     */
+    enum BodyDetail {
+        /**
+         * Bodies aren't logged, they won't be captured at all.
+         */
+        NONE,
+        /**
+         * Only the type and length of bodies are logged, the content won't
+         * be captured.
+         */
+        METADATA,
+        /**
+         * Bodies are logged including their content.
+         */
+        FULL
+    }
+
     void setBrief(boolean brief)
     boolean isBrief()
 
+    /**
+     * Whether messages of the given level are consumed. Callers may skip
+     * preparing messages that won't be consumed.
+     */
+    default boolean isEnabled(Level level) {true}
+
+    /**
+     * How much of HTTP bodies this log consumes. Bodies passed to {@link
+     * #sendBody(HttpBody)} and {@link #recvBody(HttpBody)} may contain
+     * only the metadata unless this returns {@link BodyDetail#FULL FULL}.
+     */
+    default BodyDetail getBodyDetail() {BodyDetail.FULL}
+
     void info(Object... msg)
 
     void warn(Object... msg)
@@ -0,0 +1,84 @@
+package net.netconomy.tools.restflow.impl
+
+import org.apache.http.client.CookieStore
+import org.apache.http.cookie.Cookie
+import org.apache.http.cookie.CookieIdentityComparator
+
+import java.util.concurrent.locks.ReadWriteLock
+import java.util.concurrent.locks.ReentrantReadWriteLock
+
+/**
+ * A cookie store with the semantics of Apache's {@code BasicCookieStore}
+ * using a read/write lock instead of {@code synchronized}. Monitors pin
+ * virtual threads to their carrier thread, the store is used by all
+ * requests and forks of a flow.
+ */
+class ConcurrentCookieStore implements CookieStore {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock()
+    private final TreeSet<Cookie> cookies = new TreeSet<>(new CookieIdentityComparator())
+
+    @Override
+    void addCookie(Cookie cookie) {
+        if (cookie == null) {
+            return
+        }
+        lock.writeLock().lock()
+        try {
+            // first remove any old cookie that is equivalent
+            cookies.remove(cookie)
+            if (!cookie.isExpired(new Date())) {
+                cookies.add(cookie)
+            }
+        } finally {
+            lock.writeLock().unlock()
+        }
+    }
+
+    void addCookies(Cookie[] cookies) {
+        cookies?.each {addCookie(it)}
+    }
+
+    @Override
+    List<Cookie> getCookies() {
+        lock.readLock().lock()
+        try {
+            return new ArrayList<>(cookies)
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+
+    @Override
+    boolean clearExpired(Date date) {
+        if (date == null) {
+            return false
+        }
+        lock.writeLock().lock()
+        try {
+            return cookies.removeIf {it.isExpired(date)}
+        } finally {
+            lock.writeLock().unlock()
+        }
+    }
+
+    @Override
+    void clear() {
+        lock.writeLock().lock()
+        try {
+            cookies.clear()
+        } finally {
+            lock.writeLock().unlock()
+        }
+    }
+
+    @Override
+    String toString() {
+        lock.readLock().lock()
+        try {
+            return cookies.toString()
+        } finally {
+            lock.readLock().unlock()
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package net.netconomy.tools.restflow.impl
+
+import org.apache.http.entity.AbstractHttpEntity
+import org.apache.http.entity.ContentType
+
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * A chunked entity generated by a closure writing to an {@link
+ * OutputStream}. The content is never buffered, the closure will be called
+ * each time the entity is written.
+ *
+ * <p>{@link #getContent()} runs the closure in a separate thread writing
+ * to a pipe, this is used by transports that pull the body from an
+ * {@link InputStream}. An exception thrown by the closure will be thrown
+ * by the stream.
+ */
+class ContentWriterEntity extends AbstractHttpEntity {
+
+    private static final int PIPE_SIZE = 64 * 1024
+
+    private final Closure<?> writer
+
+    ContentWriterEntity(Closure<?> writer, ContentType contentType) {
+        this.writer = writer
+        setContentType(contentType?.toString())
+        setChunked(true)
+    }
+
+    @Override
+    boolean isRepeatable() {
+        return true
+    }
+
+    @Override
+    long getContentLength() {
+        return -1
+    }
+
+    @Override
+    boolean isStreaming() {
+        return false
+    }
+
+    @Override
+    void writeTo(OutputStream out) throws IOException {
+        // don't let the closure close the connection's stream
+        writer.call(new FilterOutputStream(out) {
+            @Override
+            void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len)
+            }
+
+            @Override
+            void close() throws IOException {
+                out.flush()
+            }
+        })
+    }
+
+    @Override
+    InputStream getContent() throws IOException {
+        def failure = new AtomicReference<Throwable>()
+        def input = new PipedInputStream(PIPE_SIZE) {
+            @Override
+            synchronized int read() throws IOException {
+                checkFailure(super.read())
+            }
+
+            @Override
+            synchronized int read(byte[] b, int off, int len) throws IOException {
+                checkFailure(super.read(b, off, len))
+            }
+
+            private int checkFailure(int result) {
+                if (result < 0 && failure.get() != null) {
+                    throw new IOException("Error generating content: ${failure.get()}", failure.get())
+                }
+                return result
+            }
+        }
+        def output = new PipedOutputStream(input)
+        Runnable task = {
+            try {
+                writeTo(output)
+            } catch (Throwable e) {
+                failure.set(e)
+            } finally {
+                output.close()
+            }
+        }
+        def thread = VirtualThreads.available ? VirtualThreads.threadFactory('restflow-content-').newThread(task)
+                                              : new Thread(task, 'restflow-content')
+        thread.daemon = true
+        thread.start()
+        return input
+    }
+}
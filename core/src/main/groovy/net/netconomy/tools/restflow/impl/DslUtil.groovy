@@ -1,11 +1,16 @@
 package net.netconomy.tools.restflow.impl
 
+import groovy.transform.CompileDynamic
+import groovy.transform.CompileStatic
 import org.codehaus.groovy.runtime.InvokerHelper
 
+import java.util.concurrent.atomic.AtomicReferenceArray
+
 /**
  * @since 2018-10-12
  * @author Raffael Herzog (r.herzog@netconomy.net)
  */
+@CompileStatic
 class DslUtil {
 
     static <T> T invokeDelegateFirst(Closure<T> closure, Object delegate) {
@@ -21,12 +26,21 @@ class DslUtil {
     }
 
     static <T> Closure<T> prepareConfigClosure(Closure<T> closure, delegate, int resolveStrategy) {
-        closure = (Closure)closure.clone()
-        closure.delegate = delegate
-        closure.resolveStrategy = resolveStrategy
+        closure = (Closure<T>)closure.clone()
+        closure.setDelegate(delegate)
+        closure.setResolveStrategy(resolveStrategy)
         closure
     }
 
+    /**
+     * Prepare a closure that will be invoked repeatedly with different
+     * delegates, e.g. a pre-request handler.
+     */
+    static <T> ReusableClosure<T> reusableDelegateFirst(Closure<T> closure) {
+        new ReusableClosure<T>(closure, Closure.DELEGATE_FIRST)
+    }
+
+    @CompileDynamic
     static void tryPropertyOnMethodMissing(Object self, String methodName, Object argsObject) {
         Object[] args = InvokerHelper.asArray(argsObject)
         if (args.length != 1) {
@@ -38,4 +52,76 @@ class DslUtil {
         throw new MissingMethodException(methodName, self.getClass(), args)
     }
 
+    /**
+     * A closure that's invoked with a different delegate each time. Same as
+     * {@link #invokeConfigClosure(Closure, Object, int)}, but the prepared
+     * copies of the closure are kept in a small pool and reused instead of
+     * cloning it on every invocation. A copy is taken from the pool for
+     * each invocation, so concurrent and nested invocations get their own
+     * copy. The pool belongs to this object, not to the threads, so it
+     * works with virtual threads and doesn't keep the closure reachable.
+     *
+     * <p>Unlike with a fresh clone, closures created in the closure must not
+     * escape the invocation: the delegate of their owner is reset after
+     * the invocation and set again by the next one.
+     */
+    static final class ReusableClosure<T> {
+
+        private static final int POOL_SIZE = 16
+
+        private final Closure<T> closure
+        private final int resolveStrategy
+        private final AtomicReferenceArray<Closure<T>> copies = new AtomicReferenceArray<>(POOL_SIZE)
+
+        private ReusableClosure(Closure<T> closure, int resolveStrategy) {
+            this.closure = closure
+            this.resolveStrategy = resolveStrategy
+        }
+
+        T call(Object delegate) {
+            int start = (int)(Thread.currentThread().id % POOL_SIZE)
+            Closure<T> copy = take(start)
+            if (copy == null) {
+                copy = prepareConfigClosure(closure, null, resolveStrategy)
+            }
+            copy.setDelegate(delegate)
+            try {
+                return copy.call(delegate)
+            } finally {
+                copy.setDelegate(null)
+                release(start, copy)
+            }
+        }
+
+        /**
+         * Drop the pooled copies.
+         */
+        void clear() {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                copies.set(i, null)
+            }
+        }
+
+        private Closure<T> take(int start) {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                int slot = (start + i) % POOL_SIZE
+                if (copies.get(slot) != null) {
+                    def copy = copies.getAndSet(slot, null)
+                    if (copy != null) {
+                        return copy
+                    }
+                }
+            }
+            return null
+        }
+
+        private void release(int start, Closure<T> copy) {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                if (copies.compareAndSet((start + i) % POOL_SIZE, null, copy)) {
+                    return
+                }
+            }
+            // pool is full, drop the copy
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.HTTP
+import net.netconomy.tools.restflow.dsl.RequestConfig
+
+import java.nio.charset.Charset
+
+/**
+ * An immutable, flattened view of a {@link RequestConfig} and all its
+ * parents: the inherited values coalesced, the query parameters and
+ * headers merged and the path built.
+ *
+ * <p>Request configurations cache their effective configuration until
+ * they or one of their parents are modified. Per request, only the request
+ * itself needs to be merged onto the cached effective configuration of its
+ * parent.
+ *
+ * @see RequestConfig#effectiveConfig()
+ */
+final class EffectiveConfig {
+
+    /**
+     * The effective configuration of a request without parent.
+     */
+    static final EffectiveConfig EMPTY = new EffectiveConfig()
+
+    /**
+     * The modification count of the request this has been created from.
+     */
+    final int modCount
+    /**
+     * The effective configuration of the parent this has been created
+     * from.
+     */
+    final EffectiveConfig parent
+
+    final Charset requestCharset
+    final HTTP.Scheme scheme
+    final String host
+    final Authentication authentication
+    /**
+     * The path, never starting with '/'.
+     */
+    final String path
+    final Map<String, Object> headers
+    final Map<String, Object> query
+
+    private EffectiveConfig() {
+        modCount = 0
+        parent = null
+        requestCharset = null
+        scheme = null
+        host = null
+        authentication = null
+        path = ''
+        headers = Collections.emptyMap()
+        query = Collections.emptyMap()
+    }
+
+    EffectiveConfig(RequestConfig config, EffectiveConfig parent) {
+        this.modCount = config.modCount
+        this.parent = parent
+        requestCharset = config.requestCharset != null ? config.requestCharset : parent.requestCharset
+        scheme = config.scheme != null ? config.scheme : parent.scheme
+        host = config.host != null ? config.host : parent.host
+        authentication = config.authentication != null ? config.authentication : parent.authentication
+        path = config.path ? RequestExecution.appendPathFragment(new StringBuilder(parent.path), config.path).toString()
+                           : parent.path
+        headers = merge(parent.headers, config.headers)
+        query = merge(parent.query, config.query)
+    }
+
+    private static Map<String, Object> merge(Map<String, Object> parent, Map<String, Object> child) {
+        if (!child) {
+            return parent
+        } else if (!parent) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(child))
+        } else {
+            Map<String, Object> merged = new LinkedHashMap<>(parent)
+            merged.putAll(child)
+            return Collections.unmodifiableMap(merged)
+        }
+    }
+}
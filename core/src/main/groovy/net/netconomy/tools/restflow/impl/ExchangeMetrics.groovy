@@ -0,0 +1,183 @@
+package net.netconomy.tools.restflow.impl
+
+/**
+ * Timings and other measurements of one HTTP exchange, recorded by the
+ * {@link HttpTransport} while it's running. The phases follow the HAR
+ * timings: a phase that didn't apply (e.g. connecting on a reused
+ * connection) or that the transport can't measure is reported as -1.
+ *
+ * <p>The Apache transport records the phases using hooks in the client
+ * (connection manager, DNS resolver, socket factories, request executor),
+ * these find the metrics of the current exchange using {@link #current()}.
+ * The Java HTTP client only allows to measure the time until the
+ * response headers have been received ({@link Phase#WAIT WAIT}) and the
+ * time to receive the body.
+ */
+final class ExchangeMetrics {
+
+    enum Phase {
+        /**
+         * Waiting for a connection from the pool.
+         */
+        BLOCKED,
+        /**
+         * DNS resolution.
+         */
+        DNS,
+        /**
+         * Establishing the TCP connection (without TLS handshake).
+         */
+        CONNECT,
+        /**
+         * TLS handshake.
+         */
+        SSL,
+        /**
+         * Sending the request.
+         */
+        SEND,
+        /**
+         * Waiting for the response headers.
+         */
+        WAIT,
+        /**
+         * Receiving the response body.
+         */
+        RECEIVE
+    }
+
+    private static final Phase[] PHASES = Phase.values()
+    private static final ThreadLocal<ExchangeMetrics> CURRENT = new ThreadLocal<>()
+
+    private final long[] nanos = new long[PHASES.length]
+
+    /**
+     * The wall clock time when the exchange started.
+     */
+    long startMillis = -1
+    /**
+     * The value of {@link System#nanoTime()} when the exchange started.
+     */
+    long startNanos = -1
+    /**
+     * The protocol as reported by the client, e.g. "HTTP/1.1".
+     */
+    String protocol = null
+    /**
+     * Nanoseconds from the start until the response headers have been
+     * received or -1.
+     */
+    long headersNanos = -1
+    /**
+     * Nanoseconds from the start until the response body has been
+     * received or -1.
+     */
+    long totalNanos = -1
+    /**
+     * The number of bytes sent including the request line and headers,
+     * -1 if the transport doesn't report it.
+     */
+    long bytesSent = -1
+    /**
+     * The number of bytes received, the status line and the headers are
+     * counted in HTTP/1.1 format. -1 if no response has been received.
+     */
+    long bytesReceived = -1
+    /**
+     * Whether the exchange used a pooled connection, {@code null} if the
+     * transport doesn't tell.
+     */
+    Boolean connectionReused = null
+
+    ExchangeMetrics() {
+        Arrays.fill(nanos, -1L)
+    }
+
+    /**
+     * The metrics of the exchange currently running on this thread or
+     * {@code null}.
+     */
+    static ExchangeMetrics current() {
+        CURRENT.get()
+    }
+
+    /**
+     * Run the closure with this as the {@link #current()} metrics.
+     */
+    <T> T withCurrent(Closure<T> closure) {
+        def prev = CURRENT.get()
+        CURRENT.set(this)
+        try {
+            return closure.call()
+        } finally {
+            if (prev == null) {
+                CURRENT.remove()
+            } else {
+                CURRENT.set(prev)
+            }
+        }
+    }
+
+    void start() {
+        startMillis = System.currentTimeMillis()
+        startNanos = System.nanoTime()
+    }
+
+    void headersReceived() {
+        headersNanos = System.nanoTime() - startNanos
+    }
+
+    void finish() {
+        totalNanos = System.nanoTime() - startNanos
+    }
+
+    void addBytesSent(long bytes) {
+        bytesSent = Math.max(0L, bytesSent) + bytes
+    }
+
+    /**
+     * Add the time since {@code startNanos} to the phase. Phases may occur
+     * multiple times, e.g. if the request is retried.
+     */
+    void record(Phase phase, long startNanos) {
+        add(phase, System.nanoTime() - startNanos)
+    }
+
+    void add(Phase phase, long nanos) {
+        int i = phase.ordinal()
+        this.nanos[i] = this.nanos[i] < 0 ? nanos : this.nanos[i] + nanos
+    }
+
+    /**
+     * The duration of the phase in nanoseconds or -1 if it didn't apply.
+     */
+    long nanos(Phase phase) {
+        nanos[phase.ordinal()]
+    }
+
+    /**
+     * The duration of the phase in (fractional) milliseconds or -1 if it
+     * didn't apply.
+     */
+    double millis(Phase phase) {
+        long n = nanos(phase)
+        n < 0 ? -1d : n / 1_000_000d
+    }
+
+    /**
+     * Record the duration of the closure in the current exchange's metrics,
+     * if there are any.
+     */
+    static <T> T timed(Phase phase, Closure<T> closure) {
+        def metrics = current()
+        if (metrics == null) {
+            return closure.call()
+        }
+        long start = System.nanoTime()
+        try {
+            return closure.call()
+        } finally {
+            metrics.record(phase, start)
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package net.netconomy.tools.restflow.impl
+
+import groovy.json.JsonOutput
+import net.netconomy.tools.restflow.dsl.HTTP
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Instant
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.ReentrantLock
+
+import static net.netconomy.tools.restflow.impl.ExchangeMetrics.Phase.*
+
+/**
+ * Writes the completed exchanges to a HAR 1.2 (HTTP Archive) file. Each
+ * entry is written and flushed as soon as the exchange completes, the
+ * document is completed on {@link #close()}. The timings are taken from
+ * the request's {@link ExchangeMetrics}.
+ *
+ * <p>Bodies are only included if requested, spilled response bodies are
+ * never included.
+ */
+class HarWriter implements RequestListener, Closeable {
+
+    private final Lock lock = new ReentrantLock()
+    private final Writer out
+    private final boolean bodies
+    private boolean first = true
+    private boolean closed = false
+
+    /**
+     * @param bodies Include the request and response bodies.
+     */
+    HarWriter(Path file, boolean bodies = false) {
+        this.bodies = bodies
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)
+        out.write('{"log":{"version":"1.2","creator":')
+        out.write(JsonOutput.toJson([name   : 'RESTflow',
+                                     version: HarWriter.package?.implementationVersion ?: 'dev']))
+        out.write(',"entries":[\n')
+        out.flush()
+    }
+
+    @Override
+    void requestCompleted(RequestEvent event) {
+        def json = JsonOutput.toJson(entry(event))
+        lock.lock()
+        try {
+            if (closed) {
+                return
+            }
+            if (first) {
+                first = false
+            } else {
+                out.write(',\n')
+            }
+            out.write(json)
+            out.flush()
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    @Override
+    void close() {
+        lock.lock()
+        try {
+            if (!closed) {
+                closed = true
+                out.write('\n]}}\n')
+                out.close()
+            }
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private Map entry(RequestEvent event) {
+        def metrics = event.request.metrics
+        def timings = [blocked: metrics.millis(BLOCKED),
+                       dns    : metrics.millis(DNS),
+                       connect: metrics.millis(CONNECT),
+                       send   : Math.max(0d, metrics.millis(SEND)),
+                       wait   : Math.max(0d, metrics.millis(WAIT)),
+                       receive: Math.max(0d, metrics.millis(RECEIVE)),
+                       ssl    : metrics.millis(SSL)]
+        // the SSL time is included in the connect time in HAR
+        if (timings.ssl >= 0) {
+            timings.connect = Math.max(0d, timings.connect as double) + (timings.ssl as double)
+        }
+        double time = [timings.blocked, timings.dns, timings.connect, timings.send, timings.wait, timings.receive].
+                sum {double t -> Math.max(0d, t)} as double
+        def started = metrics.startMillis >= 0 ? metrics.startMillis
+                                               : System.currentTimeMillis() - (long)(event.durationNanos / 1_000_000)
+        def entry = [startedDateTime: Instant.ofEpochMilli(started).toString(),
+                     time           : time,
+                     request        : request(event.request, metrics.protocol),
+                     response       : response(event, metrics.protocol),
+                     cache          : [:],
+                     timings        : timings]
+        if (event.error != null) {
+            entry._error = event.error.toString()
+        }
+        return entry
+    }
+
+    private Map request(PreparedRequest request, String protocol) {
+        def config = request.config
+        def headers = request.headers.collect {k, v -> [name: k, value: v]}
+        if (request.authorization != null) {
+            headers.add([name: HTTP.Authorization, value: request.authorization])
+        }
+        def contentType = request.contentType
+        if (contentType != null && !request.headers.keySet().any {it.equalsIgnoreCase(HTTP.ContentType)}) {
+            headers.add([name: HTTP.ContentType, value: contentType.toString()])
+        }
+        long bodySize = 0
+        if (config.content != null) {
+            bodySize = config.content.getBytes(contentType?.charset ?: StandardCharsets.ISO_8859_1).length
+        } else if (config.rawContent != null) {
+            bodySize = config.rawContent.length
+        } else if (config.contentFile != null) {
+            bodySize = Files.size(config.contentFile)
+        } else if (request.hasContent) {
+            bodySize = -1
+        }
+        def result = [method     : request.method,
+                      url        : request.uri.toString(),
+                      httpVersion: protocol ?: '',
+                      cookies    : [],
+                      headers    : headers,
+                      queryString: queryString(request.uri),
+                      headersSize: -1,
+                      bodySize   : bodySize]
+        if (request.hasContent) {
+            def postData = [mimeType: contentType?.toString() ?: '', text: '']
+            if (bodies && config.content != null) {
+                postData.text = config.content
+            }
+            result.postData = postData
+        }
+        return result
+    }
+
+    private Map response(RequestEvent event, String protocol) {
+        def response = event.response
+        if (response == null) {
+            return [status     : 0,
+                    statusText : '',
+                    httpVersion: protocol ?: '',
+                    cookies    : [],
+                    headers    : [],
+                    content    : [size: 0, mimeType: ''],
+                    redirectURL: '',
+                    headersSize: -1,
+                    bodySize   : -1]
+        }
+        def body = response.body
+        def content = [size    : Math.max(0L, body.contentLength),
+                       mimeType: response.headers.find {k, v -> k.equalsIgnoreCase(HTTP.ContentType)}?.value ?: '']
+        if (bodies && body.contentLength > 0 && !body.spilled && !body.metadataOnly) {
+            if (body.text) {
+                content.text = body.content
+            } else {
+                content.text = Base64.encoder.encodeToString(body.rawContent)
+                content.encoding = 'base64'
+            }
+        }
+        return [status     : response.statusCode,
+                statusText : response.reasonPhrase ?: '',
+                httpVersion: protocol ?: '',
+                cookies    : [],
+                headers    : response.headers.collect {k, v -> [name: k, value: v]},
+                content    : content,
+                redirectURL: response.headers.find {k, v -> k.equalsIgnoreCase('Location')}?.value ?: '',
+                headersSize: -1,
+                bodySize   : body.contentLength]
+    }
+
+    private static List<Map> queryString(URI uri) {
+        if (!uri.rawQuery) {
+            return []
+        }
+        uri.rawQuery.split('&').collect {String p ->
+            int i = p.indexOf('=')
+            def name = i < 0 ? p : p.substring(0, i)
+            def value = i < 0 ? '' : p.substring(i + 1)
+            [name : URLDecoder.decode(name, StandardCharsets.UTF_8.name()),
+             value: URLDecoder.decode(value, StandardCharsets.UTF_8.name())]
+        }
+    }
+}
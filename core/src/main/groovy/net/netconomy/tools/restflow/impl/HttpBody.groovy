@@ -7,7 +7,14 @@ import net.netconomy.tools.restflow.dsl.HTTP
 import org.apache.http.HttpEntity
 import org.apache.http.entity.ContentType
 
+import java.lang.ref.SoftReference
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
 import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
 import java.util.function.Function
 
 class HttpBody {
@@ -32,65 +39,300 @@ class HttpBody {
         PRETTY_PRINTERS = pretty.asImmutable()
     }
 
+    private static final int BUFFER_SIZE = 8192
+
     private final String mimeType
     private final byte[] rawContent
+    private final Path file
     private final Charset charset
-    private final String content
+    private volatile String content = null
+    /**
+     * The content of a spilled body, kept while memory permits.
+     */
+    private volatile SoftReference<byte[]> spilledRawContent = null
+    private volatile SoftReference<String> spilledContent = null
     private final Function<? super String, String> prettyPrinter
+    private final boolean streamed
+    private final long contentLength
 
     HttpBody(HttpEntity entity, Charset defaultCharset) {
-        rawContent = entity.content.getBytes()
-        def ct = ContentType.parse(entity.contentType?.value ?: HTTP.AnyType)
+        this(entity.content.getBytes(), entity.contentType?.value, defaultCharset)
+    }
+
+    HttpBody(byte[] rawContent, String contentType, Charset defaultCharset) {
+        this(rawContent, null, rawContent.length, contentType, defaultCharset)
+    }
+
+    private HttpBody(byte[] rawContent, Path file, long contentLength, String contentType, Charset defaultCharset,
+                     boolean streamed = false) {
+        this.rawContent = rawContent
+        this.file = file
+        this.contentLength = contentLength
+        def ct = ContentType.parse(contentType ?: HTTP.AnyType)
         mimeType = ct.mimeType
         if (mimeType.startsWith('text/') || KNOWN_TEXT_TYPES.contains(mimeType)) {
             charset = ct.charset ?: defaultCharset
-            content = new String(rawContent, charset)
         } else {
             charset = null
-            content = null
         }
         prettyPrinter = PRETTY_PRINTERS.get(mimeType)
+        this.streamed = streamed
+        if (file != null) {
+            SpillFile.deleteWhenUnreachable(this, file)
+        }
     }
 
     private HttpBody() {
         mimeType = null
         rawContent = null
+        file = null
         charset = null
-        content = null
         prettyPrinter = null
+        streamed = false
+        contentLength = 0
+    }
+
+    /**
+     * A body that is streamed and therefore not available for logging, only
+     * its metadata is known.
+     *
+     * @param contentLength The length or -1 if unknown.
+     */
+    static HttpBody streamed(String contentType, long contentLength) {
+        return new HttpBody(null, null, contentLength, contentType, null, true)
+    }
+
+    /**
+     * A body of which only the metadata has been captured because the log
+     * doesn't consume the content.
+     *
+     * @see CommLog#getBodyDetail()
+     */
+    static HttpBody metadata(String contentType, long contentLength, Charset defaultCharset) {
+        return new HttpBody(null, null, contentLength, contentType, defaultCharset)
+    }
+
+    /**
+     * Read a body from a stream, the stream will be closed. If the body is
+     * larger than the spill threshold, it will be written to a temporary
+     * file instead of being kept in memory.
+     *
+     * @param spillThreshold The maximum number of bytes kept in memory, -1
+     * to always keep the body in memory.
+     */
+    static HttpBody read(InputStream input, String contentType, Charset defaultCharset, long spillThreshold) {
+        input.withStream {
+            if (spillThreshold < 0) {
+                return new HttpBody(input.bytes, contentType, defaultCharset)
+            }
+            def buffer = new ByteArrayOutputStream((int)Math.min(spillThreshold + 1, BUFFER_SIZE))
+            def chunk = new byte[BUFFER_SIZE]
+            int count
+            while ((count = input.read(chunk)) >= 0) {
+                buffer.write(chunk, 0, count)
+                if (buffer.size() > spillThreshold) {
+                    return spill(buffer, input, contentType, defaultCharset)
+                }
+            }
+            return new HttpBody(buffer.toByteArray(), contentType, defaultCharset)
+        }
+    }
+
+    private static HttpBody spill(ByteArrayOutputStream head, InputStream tail, String contentType, Charset defaultCharset) {
+        def file = SpillFile.create()
+        try {
+            long length = head.size()
+            Files.newOutputStream(file).withStream {out ->
+                head.writeTo(out)
+                length += tail.transferTo(out)
+            }
+            return new HttpBody(null, file, length, contentType, defaultCharset)
+        } catch (Throwable e) {
+            SpillFile.delete(file)
+            throw e
+        }
     }
 
     boolean isEmpty() {
-        return rawContent == null
+        return mimeType == null
+    }
+
+    /**
+     * Whether only the metadata of the body is available, i.e. it has been
+     * streamed or has been captured for logging without content.
+     */
+    boolean isMetadataOnly() {
+        return !empty && rawContent == null && file == null
+    }
+
+    /**
+     * Whether the body has been streamed. Streamed bodies only provide
+     * their metadata, the content is {@code null}.
+     */
+    boolean isStreamed() {
+        return streamed
+    }
+
+    /**
+     * Whether the body has been spilled to a temporary file because it
+     * exceeded the spill threshold. The content of spilled bodies is loaded
+     * from the file when requested and only softly memoised, i.e. it may
+     * have to be loaded again if memory gets low. Use {@link #openStream()}
+     * or {@link #openReader()} to read them with bounded memory.
+     */
+    boolean isSpilled() {
+        return file != null
+    }
+
+    /**
+     * Whether this is a text body, i.e. {@link #getContent()} will return
+     * the decoded text.
+     */
+    boolean isText() {
+        return charset != null
+    }
+
+    /**
+     * The length of the body in bytes, -1 if it's streamed with unknown
+     * length.
+     */
+    long getContentLength() {
+        return contentLength
     }
 
     String getMimeType() {
         return mimeType
     }
 
+    /**
+     * A copy of the raw content. Prefer {@link #asByteBuffer()} or {@link
+     * #openStream()}, they don't copy the content.
+     */
     byte[] getRawContent() {
-        if (rawContent == null) {
+        byte[] bytes = rawContent
+        if (file != null) {
+            bytes = spilledRawContent?.get()
+            if (bytes == null) {
+                bytes = Files.readAllBytes(file)
+                spilledRawContent = new SoftReference<>(bytes)
+            }
+        }
+        if (bytes == null) {
             return null
         } else {
-            def c = new byte[rawContent.length]
-            System.arraycopy(rawContent, 0, c, 0, rawContent.length)
+            def c = new byte[bytes.length]
+            System.arraycopy(bytes, 0, c, 0, bytes.length)
             return c
         }
     }
 
+    /**
+     * A read-only view of the raw content without copying it. Spilled
+     * bodies are mapped into memory: keep the body (or its response)
+     * reachable while using the buffer, the file is deleted as soon as the
+     * body becomes unreachable.
+     *
+     * @throws IllegalStateException If only the metadata is available or
+     * the body is too large to be mapped.
+     */
+    ByteBuffer asByteBuffer() {
+        if (metadataOnly) {
+            throw new IllegalStateException('Only the metadata of the body is available')
+        } else if (file != null) {
+            if (contentLength > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Body too large to be mapped ($contentLength bytes), use openStream()")
+            }
+            FileChannel.open(file, StandardOpenOption.READ).withCloseable {
+                it.map(FileChannel.MapMode.READ_ONLY, 0, contentLength).asReadOnlyBuffer()
+            }
+        } else if (rawContent == null) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer()
+        } else {
+            return ByteBuffer.wrap(rawContent).asReadOnlyBuffer()
+        }
+    }
+
+    /**
+     * Open a stream to read the raw content. Spilled bodies are read from
+     * their file.
+     *
+     * @throws IllegalStateException If only the metadata is available.
+     */
+    InputStream openStream() {
+        if (metadataOnly) {
+            throw new IllegalStateException('Only the metadata of the body is available')
+        } else if (file != null) {
+            return Files.newInputStream(file)
+        } else if (rawContent == null) {
+            return InputStream.nullInputStream()
+        } else {
+            return new ByteArrayInputStream(rawContent)
+        }
+    }
+
+    /**
+     * Write the raw content to a file, existing files will be replaced.
+     */
+    void saveTo(Path target) {
+        if (file != null) {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING)
+        } else {
+            openStream().withStream {Files.copy(it, target, StandardCopyOption.REPLACE_EXISTING)}
+        }
+    }
+
     Charset getCharset() {
         return charset
     }
 
+    /**
+     * The decoded text content or {@code null} if this isn't a text body.
+     * The content is decoded on first access and memoised, for spilled
+     * bodies only softly (see {@link #isSpilled()}).
+     */
     String getContent() {
-        return content
+        if (charset == null || metadataOnly) {
+            return null
+        } else if (file != null) {
+            def result = spilledContent?.get()
+            if (result == null) {
+                result = new String(Files.readAllBytes(file), charset)
+                spilledContent = new SoftReference<>(result)
+            }
+            return result
+        }
+        def result = content
+        if (result == null) {
+            result = new String(rawContent, charset)
+            content = result
+        }
+        return result
+    }
+
+    /**
+     * Open a reader to read the text content decoded chunk-wise, without
+     * decoding the whole content at once.
+     *
+     * @throws IllegalStateException If this isn't a text body or only the
+     * metadata is available.
+     */
+    Reader openReader() {
+        if (charset == null) {
+            throw new IllegalStateException("Not a text body: $mimeType")
+        }
+        def result = file != null ? spilledContent?.get() : content
+        if (result != null) {
+            return new StringReader(result)
+        }
+        return new InputStreamReader(openStream(), charset)
     }
 
     boolean isPrettyPrintable() {
-        return content && prettyPrinter
+        return charset != null && contentLength > 0 && rawContent != null && prettyPrinter
     }
 
     String getPrettyContent() {
+        def content = getContent()
         if (content) {
             try {
                 return prettyPrinter ? prettyPrinter.apply(content) : content
@@ -0,0 +1,27 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.Response
+import net.netconomy.tools.restflow.dsl.RestFlow
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * The HTTP backend of a {@link RestFlow}. Transports receive fully
+ * resolved requests, they're responsible for logging the request as
+ * actually sent, cookie handling (if enabled in the flow) and creating the
+ * response using {@link RequestExecution#receive RequestExecution.receive()}.
+ *
+ * <p>Transports may be shared between several RESTflow instances and must
+ * therefore be thread-safe.
+ *
+ * @see HttpTransports
+ */
+interface HttpTransport extends Closeable {
+
+    String getName()
+
+    Response execute(RestFlow flow, PreparedRequest request)
+
+    CompletableFuture<Response> executeAsync(RestFlow flow, PreparedRequest request)
+
+}
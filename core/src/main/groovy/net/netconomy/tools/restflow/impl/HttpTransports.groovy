@@ -0,0 +1,75 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.RestFlow
+import org.apache.http.ssl.SSLContextBuilder
+import org.apache.http.ssl.TrustStrategy
+
+import javax.net.ssl.SSLContext
+import java.security.cert.CertificateException
+import java.security.cert.X509Certificate
+
+/**
+ * Factory for the built-in {@link HttpTransport}s:
+ *
+ * <ul>
+ *   <li><strong>{@value ApacheHttpTransport#NAME}:</strong> Apache HTTP
+ *     client 4.5 using the flow's {@link
+ *     net.netconomy.tools.restflow.dsl.ConnectionPool ConnectionPool}
+ *     (default)</li>
+ *   <li><strong>{@value JdkHttpTransport#NAME}:</strong> Java 11 HTTP
+ *     client, supports HTTP/2</li>
+ * </ul>
+ *
+ * The default can be changed using the system property {@value
+ * #DEFAULT_TRANSPORT_PROPERTY}.
+ */
+final class HttpTransports {
+
+    static final String DEFAULT_TRANSPORT_PROPERTY = 'restflow.transport'
+
+    private HttpTransports() {
+    }
+
+    static String getDefaultName() {
+        System.getProperty(DEFAULT_TRANSPORT_PROPERTY) ?: ApacheHttpTransport.NAME
+    }
+
+    static HttpTransport create(String name, RestFlow flow) {
+        switch (name) {
+        case ApacheHttpTransport.NAME:
+            return new ApacheHttpTransport(flow.connectionPool)
+        case JdkHttpTransport.NAME:
+            return new JdkHttpTransport(trustAllSslContext())
+        default:
+            throw new IllegalArgumentException("No such transport: $name")
+        }
+    }
+
+    /**
+     * Disable the host name verification of the Java HTTP client like the
+     * Apache transport does, unless the system property {@value
+     * JdkHttpTransport#DISABLE_HOSTNAME_VERIFICATION_PROPERTY} is set
+     * explicitly. This applies to all Java HTTP clients in the JVM and the
+     * property is read only once, so this is for the main classes of the
+     * frontends, to be called before anything uses {@code java.net.http}.
+     */
+    static void disableJdkHostnameVerification() {
+        if (System.getProperty(JdkHttpTransport.DISABLE_HOSTNAME_VERIFICATION_PROPERTY) == null) {
+            System.setProperty(JdkHttpTransport.DISABLE_HOSTNAME_VERIFICATION_PROPERTY, 'true')
+        }
+    }
+
+    /**
+     * RESTflow is a development tool, we trust all certificates.
+     */
+    static SSLContext trustAllSslContext() {
+        SSLContextBuilder sslCtxBuilder = new SSLContextBuilder()
+        sslCtxBuilder.loadTrustMaterial(null, new TrustStrategy() {
+            @Override
+            boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                return true
+            }
+        })
+        sslCtxBuilder.build()
+    }
+}
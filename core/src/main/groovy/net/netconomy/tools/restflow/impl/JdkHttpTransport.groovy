@@ -0,0 +1,249 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.HTTP
+import net.netconomy.tools.restflow.dsl.Response
+import net.netconomy.tools.restflow.dsl.RestFlow
+import org.apache.http.client.CookieStore
+import org.apache.http.conn.util.PublicSuffixMatcherLoader
+import org.apache.http.cookie.CookieOrigin
+import org.apache.http.cookie.CookieSpec
+import org.apache.http.cookie.MalformedCookieException
+import org.apache.http.impl.EnglishReasonPhraseCatalog
+import org.apache.http.impl.cookie.RFC6265CookieSpecProvider
+import org.apache.http.message.BasicHeader
+
+import javax.net.ssl.SSLContext
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.Function
+import java.util.function.Supplier
+
+/**
+ * Transport using the Java 11 HTTP client. HTTP/2 will be negotiated if the
+ * server supports it, concurrent requests to the same server will then be
+ * multiplexed over one connection.
+ *
+ * <p>The connection pool of the flow doesn't apply to this transport.
+ * Cookies are handled using the flow's cookie store, i.e. they're shared
+ * with the Apache transport. Response header names are reported as
+ * received by the client, i.e. lower case.
+ *
+ * <p><strong>Note:</strong> The Java HTTP client only allows to disable
+ * host name verification globally using the system property {@value
+ * #DISABLE_HOSTNAME_VERIFICATION_PROPERTY}, which is read only once. The
+ * RESTflow frontends set it at startup (see {@link
+ * HttpTransports#disableJdkHostnameVerification()}), when embedding
+ * RESTflow, pass {@code -D}{@value #DISABLE_HOSTNAME_VERIFICATION_PROPERTY}{@code
+ * =true} to the JVM to connect to servers with mismatching certificates.
+ */
+class JdkHttpTransport implements HttpTransport {
+
+    static final String NAME = 'jdk'
+
+    static final String DISABLE_HOSTNAME_VERIFICATION_PROPERTY = 'jdk.internal.httpclient.disableHostnameVerification'
+
+    /**
+     * Headers the Java HTTP client doesn't allow to be set.
+     */
+    private static final Set<String> RESTRICTED_HEADERS =
+            (['connection', 'content-length', 'expect', 'host', 'upgrade'] as Set).asImmutable()
+
+    private final HttpClient client
+    private final CookieSpec cookieSpec =
+            new RFC6265CookieSpecProvider(PublicSuffixMatcherLoader.getDefault()).create(null)
+
+    JdkHttpTransport(SSLContext sslContext) {
+        client = HttpClient.newBuilder().
+                version(HttpClient.Version.HTTP_2).
+                followRedirects(HttpClient.Redirect.NEVER).
+                sslContext(sslContext).
+                build()
+    }
+
+    @Override
+    String getName() {
+        return NAME
+    }
+
+    @Override
+    Response execute(RestFlow flow, PreparedRequest request) {
+        def httpRequest = createRequest(flow, request)
+        request.metrics.start()
+        def resp = client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream())
+        request.metrics.record(ExchangeMetrics.Phase.WAIT, request.metrics.startNanos)
+        receive(flow, request, resp)
+    }
+
+    /**
+     * The client doesn't tell when it has connected or sent the request,
+     * the time until the response headers have been received is recorded
+     * as {@link ExchangeMetrics.Phase#WAIT WAIT}.
+     */
+    @Override
+    CompletableFuture<Response> executeAsync(RestFlow flow, PreparedRequest request) {
+        def httpRequest = createRequest(flow, request)
+        request.metrics.start()
+        // the body is read from a blocking stream, don't do this on the client's threads
+        client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream()).
+                thenApply({HttpResponse<InputStream> resp ->
+                    request.metrics.record(ExchangeMetrics.Phase.WAIT, request.metrics.startNanos)
+                    resp
+                } as Function).
+                thenApplyAsync({HttpResponse<InputStream> resp -> receive(flow, request, resp)} as Function, flow.executor)
+    }
+
+    @Override
+    void close() {
+        // the Java 11 client has no explicit life cycle
+    }
+
+    private HttpRequest createRequest(RestFlow flow, PreparedRequest request) {
+        def builder = HttpRequest.newBuilder(request.uri)
+        // the headers as sent for the log, null if not logging
+        List<Map.Entry<String, String>> sent = flow.log.isEnabled(CommLog.Level.HTTP) ? [] : null
+        request.headers.each { k, v ->
+            if (RESTRICTED_HEADERS.contains(k.toLowerCase())) {
+                flow.log.debug 'Ignoring restricted header', k
+            } else {
+                builder.setHeader(k, v)
+                sent?.add(new AbstractMap.SimpleImmutableEntry<>(k, v))
+            }
+        }
+        if (request.authorization != null) {
+            builder.header(HTTP.Authorization, request.authorization)
+            sent?.add(new AbstractMap.SimpleImmutableEntry<>(HTTP.Authorization, request.authorization))
+        }
+        if (flow.cookies.enabled) {
+            def cookies = matchingCookies(flow.cookies.store, cookieOrigin(request.uri))
+            if (cookies) {
+                cookieSpec.formatCookies(cookies).each { h ->
+                    builder.header(h.name, h.value)
+                    sent?.add(new AbstractMap.SimpleImmutableEntry<>(h.name, h.value))
+                }
+            }
+        }
+        def body = HttpRequest.BodyPublishers.noBody()
+        def contentType = request.contentType
+        def config = request.config
+        byte[] bytes = null
+        if (config.content != null) {
+            bytes = config.content.getBytes(contentType?.charset ?: StandardCharsets.ISO_8859_1)
+        } else if (config.rawContent != null) {
+            bytes = config.rawContent
+        }
+        if (bytes != null) {
+            body = HttpRequest.BodyPublishers.ofByteArray(bytes)
+        } else if (config.contentFile != null) {
+            body = HttpRequest.BodyPublishers.ofFile(config.contentFile)
+        } else if (config.contentStream != null) {
+            def stream = config.contentStream
+            def subscribed = new AtomicBoolean()
+            body = HttpRequest.BodyPublishers.ofInputStream({
+                // the client may subscribe again, e.g. to retry a refused HTTP/2 stream
+                if (subscribed.getAndSet(true)) {
+                    throw new IllegalStateException('The content stream can only be sent once')
+                }
+                stream
+            } as Supplier<InputStream>)
+        } else if (config.contentWriter != null) {
+            def entity = new ContentWriterEntity(config.contentWriter, contentType)
+            body = HttpRequest.BodyPublishers.ofInputStream({entity.content} as Supplier<InputStream>)
+        }
+        if (request.hasContent && contentType != null
+                && !request.headers.keySet().any {it.equalsIgnoreCase(HTTP.ContentType)}) {
+            builder.setHeader(HTTP.ContentType, contentType.toString())
+            sent?.add(new AbstractMap.SimpleImmutableEntry<>(HTTP.ContentType, contentType.toString()))
+        }
+        if (sent != null) {
+            logRequest(flow, request, sent, bytes, body.contentLength())
+        }
+        builder.method(request.method, body)
+        builder.build()
+    }
+
+    /**
+     * Log the request like the {@link LogRequestInterceptor} does for the
+     * Apache transport.
+     */
+    private static void logRequest(RestFlow flow, PreparedRequest request, List<Map.Entry<String, String>> headers,
+                                   byte[] bytes, long contentLength) {
+        def log = flow.log
+        log.send request.method, request.uri
+        headers.each { h ->
+            log.send h.key + ':', h.value
+        }
+        def detail = log.bodyDetail
+        if (detail == CommLog.BodyDetail.NONE) {
+            return
+        }
+        def contentType = request.contentType?.toString()
+        if (!request.hasContent) {
+            log.sendBody(HttpBody.EMPTY)
+        } else if (bytes == null) {
+            // files, streams and generated content must not be read for logging
+            log.sendBody(HttpBody.streamed(contentType, contentLength))
+        } else if (detail == CommLog.BodyDetail.METADATA) {
+            log.sendBody(HttpBody.metadata(contentType, bytes.length, StandardCharsets.UTF_8))
+        } else {
+            log.sendBody(new HttpBody(bytes, contentType, StandardCharsets.UTF_8))
+        }
+    }
+
+    private Response receive(RestFlow flow, PreparedRequest request, HttpResponse<InputStream> resp) {
+        request.metrics.protocol = resp.version() == HttpClient.Version.HTTP_2 ? 'HTTP/2' : 'HTTP/1.1'
+        if (flow.cookies.enabled) {
+            storeCookies(flow, resp)
+        }
+        def headers = resp.headers().map().collectMany { k, vs ->
+            vs.collect {v -> new AbstractMap.SimpleImmutableEntry(k, v)}
+        }
+        RequestExecution.receive(flow, request, resp.statusCode(),
+                                 EnglishReasonPhraseCatalog.INSTANCE.getReason(resp.statusCode(), Locale.ENGLISH) ?: '',
+                                 headers) {
+            def input = resp.body()
+            if (input == null) {
+                HttpBody.EMPTY
+            } else if (request.method == 'HEAD') {
+                input.close()
+                HttpBody.EMPTY
+            } else {
+                long start = System.nanoTime()
+                try {
+                    HttpBody.read(input, resp.headers().firstValue(HTTP.ContentType).orElse(null),
+                                  flow.defaultResponseCharset, flow.responseSpillThreshold)
+                } finally {
+                    request.metrics.record(ExchangeMetrics.Phase.RECEIVE, start)
+                }
+            }
+        }
+    }
+
+    private void storeCookies(RestFlow flow, HttpResponse<?> resp) {
+        def origin = cookieOrigin(resp.uri())
+        resp.headers().allValues('Set-Cookie').each { v ->
+            try {
+                cookieSpec.parse(new BasicHeader('Set-Cookie', v), origin).each { c ->
+                    cookieSpec.validate(c, origin)
+                    flow.cookies.store.addCookie(c)
+                }
+            } catch (MalformedCookieException e) {
+                flow.log.warn "Rejecting cookie: $v ($e.message)"
+            }
+        }
+    }
+
+    private List matchingCookies(CookieStore store, CookieOrigin origin) {
+        def now = new Date()
+        store.cookies.findAll {c -> !c.isExpired(now) && cookieSpec.match(c, origin)}
+    }
+
+    private static CookieOrigin cookieOrigin(URI uri) {
+        def secure = uri.scheme == HTTP.Scheme.HTTPS.uriScheme
+        def port = uri.port >= 0 ? uri.port : (secure ? 443 : 80)
+        new CookieOrigin(uri.host, port, uri.rawPath ?: '/', secure)
+    }
+}
@@ -0,0 +1,77 @@
+package net.netconomy.tools.restflow.impl
+
+import jdk.jfr.Category
+import jdk.jfr.DataAmount
+import jdk.jfr.Description
+import jdk.jfr.Event
+import jdk.jfr.Label
+import jdk.jfr.Name
+import jdk.jfr.StackTrace
+import jdk.jfr.Timespan
+
+/**
+ * Emits a JDK Flight Recorder event for each HTTP exchange. If no
+ * recording is running or the event is disabled, this costs about one
+ * allocation per exchange.
+ */
+class JfrRequestListener implements RequestListener {
+
+    @Override
+    void requestCompleted(RequestEvent event) {
+        def jfr = new HttpExchange()
+        if (!jfr.enabled) {
+            return
+        }
+        def metrics = event.request.metrics
+        jfr.method = event.request.method
+        jfr.host = event.host
+        jfr.path = event.pathTemplate
+        jfr.status = event.response?.statusCode ?: 0
+        jfr.statusClass = event.statusClass
+        jfr.error = event.error?.toString()
+        jfr.latency = event.durationNanos
+        jfr.timeToFirstByte = metrics.headersNanos
+        jfr.queueWait = metrics.nanos(ExchangeMetrics.Phase.BLOCKED)
+        jfr.bytesSent = metrics.bytesSent
+        jfr.bytesReceived = metrics.bytesReceived
+        jfr.connectionReused = metrics.connectionReused ?: false
+        jfr.commit()
+    }
+
+    @Name('net.netconomy.restflow.HttpExchange')
+    @Label('HTTP Exchange')
+    @Description('An HTTP exchange of a RESTflow instance')
+    @Category(['RESTflow'])
+    @StackTrace(false)
+    static class HttpExchange extends Event {
+        @Label('Method')
+        public String method
+        @Label('Host')
+        public String host
+        @Label('Path Template')
+        public String path
+        @Label('Status')
+        public int status
+        @Label('Status Class')
+        public String statusClass
+        @Label('Error')
+        public String error
+        @Label('Latency')
+        @Timespan(Timespan.NANOSECONDS)
+        public long latency
+        @Label('Time to First Byte')
+        @Timespan(Timespan.NANOSECONDS)
+        public long timeToFirstByte
+        @Label('Queue Wait')
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueWait
+        @Label('Bytes Sent')
+        @DataAmount(DataAmount.BYTES)
+        public long bytesSent
+        @Label('Bytes Received')
+        @DataAmount(DataAmount.BYTES)
+        public long bytesReceived
+        @Label('Connection Reused')
+        public boolean connectionReused
+    }
+}
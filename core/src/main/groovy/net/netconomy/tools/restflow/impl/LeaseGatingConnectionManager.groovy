@@ -0,0 +1,179 @@
+package net.netconomy.tools.restflow.impl
+
+import org.apache.http.HttpClientConnection
+import org.apache.http.conn.ConnectionPoolTimeoutException
+import org.apache.http.conn.ConnectionRequest
+import org.apache.http.conn.HttpClientConnectionManager
+import org.apache.http.conn.routing.HttpRoute
+import org.apache.http.protocol.HttpContext
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.Condition
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.ReentrantLock
+import java.util.function.IntSupplier
+
+/**
+ * Wraps a pooling connection manager and makes sure that a connection is
+ * only requested from the pool if the limits allow it, i.e. the pool never
+ * has to wait.
+ *
+ * <p>HttpCore waits for free connections while holding a monitor, which
+ * pins virtual threads to their carrier thread. With few carrier threads,
+ * this quickly leads to a deadlock: the threads that would release the
+ * connections can't run. This class waits using a {@link Lock} instead.
+ */
+class LeaseGatingConnectionManager implements HttpClientConnectionManager {
+
+    private final HttpClientConnectionManager delegate
+    private final IntSupplier maxTotal
+    private final IntSupplier maxPerRoute
+
+    private final Lock lock = new ReentrantLock()
+    private final Condition released = lock.newCondition()
+    private int leasedTotal = 0
+    private final Map<HttpRoute, Integer> leasedPerRoute = new HashMap<>()
+    private final ConcurrentMap<HttpClientConnection, HttpRoute> leased = new ConcurrentHashMap<>()
+
+    /**
+     * @param maxTotal    Supplies the current total limit.
+     * @param maxPerRoute Supplies the current limit per route.
+     */
+    LeaseGatingConnectionManager(HttpClientConnectionManager delegate, IntSupplier maxTotal, IntSupplier maxPerRoute) {
+        this.delegate = delegate
+        this.maxTotal = maxTotal
+        this.maxPerRoute = maxPerRoute
+    }
+
+    HttpClientConnectionManager getDelegate() {
+        return delegate
+    }
+
+    /**
+     * Wake up waiting threads after the limits have been raised.
+     */
+    void limitsChanged() {
+        lock.lock()
+        try {
+            released.signalAll()
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    @Override
+    ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        return new ConnectionRequest() {
+            private volatile ConnectionRequest request = null
+            private volatile boolean cancelled = false
+
+            @Override
+            HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                def metrics = ExchangeMetrics.current()
+                long start = System.nanoTime()
+                acquire(route, timeout > 0 ? timeUnit.toNanos(timeout) : 0)
+                HttpClientConnection conn = null
+                try {
+                    if (cancelled) {
+                        throw new InterruptedException('Connection request cancelled')
+                    }
+                    request = delegate.requestConnection(route, state)
+                    conn = request.get(timeout, timeUnit)
+                    leased.put(conn, route)
+                    return conn
+                } finally {
+                    metrics?.record(ExchangeMetrics.Phase.BLOCKED, start)
+                    if (conn == null) {
+                        release(route)
+                    }
+                }
+            }
+
+            @Override
+            boolean cancel() {
+                cancelled = true
+                request?.cancel()
+                return true
+            }
+        }
+    }
+
+    @Override
+    void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+        def route = leased.remove(conn)
+        try {
+            delegate.releaseConnection(conn, newState, validDuration, timeUnit)
+        } finally {
+            if (route != null) {
+                release(route)
+            }
+        }
+    }
+
+    @Override
+    void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) {
+        delegate.connect(conn, route, connectTimeout, context)
+    }
+
+    @Override
+    void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) {
+        delegate.upgrade(conn, route, context)
+    }
+
+    @Override
+    void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) {
+        delegate.routeComplete(conn, route, context)
+    }
+
+    @Override
+    void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+        delegate.closeIdleConnections(idletime, timeUnit)
+    }
+
+    @Override
+    void closeExpiredConnections() {
+        delegate.closeExpiredConnections()
+    }
+
+    @Override
+    void shutdown() {
+        delegate.shutdown()
+    }
+
+    private void acquire(HttpRoute route, long timeoutNanos) {
+        lock.lock()
+        try {
+            long remaining = timeoutNanos
+            while (leasedTotal >= maxTotal.asInt || leasedPerRoute.getOrDefault(route, 0) >= maxPerRoute.asInt) {
+                if (timeoutNanos <= 0) {
+                    released.await()
+                } else if (remaining <= 0) {
+                    throw new ConnectionPoolTimeoutException('Timeout waiting for connection from pool')
+                } else {
+                    remaining = released.awaitNanos(remaining)
+                }
+            }
+            leasedTotal++
+            leasedPerRoute.merge(route, 1, Integer.&sum)
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private void release(HttpRoute route) {
+        lock.lock()
+        try {
+            leasedTotal--
+            if (leasedPerRoute.merge(route, -1, Integer.&sum) <= 0) {
+                leasedPerRoute.remove(route)
+            }
+            released.signalAll()
+        } finally {
+            lock.unlock()
+        }
+    }
+}
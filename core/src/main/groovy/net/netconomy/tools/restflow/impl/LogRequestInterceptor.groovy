@@ -2,6 +2,8 @@ package net.netconomy.tools.restflow.impl
 
 import net.netconomy.tools.restflow.dsl.RestFlow
 import org.apache.http.*
+import org.apache.http.entity.ByteArrayEntity
+import org.apache.http.entity.StringEntity
 import org.apache.http.protocol.HttpContext
 
 import java.nio.charset.StandardCharsets
@@ -13,22 +15,43 @@ import java.nio.charset.StandardCharsets
  */
 class LogRequestInterceptor implements HttpRequestInterceptor {
 
-    final RestFlow flow
-
-    LogRequestInterceptor(RestFlow flow) {
-        this.flow = flow
-    }
+    /**
+     * The context attribute holding the {@link RestFlow} to log to.
+     */
+    static final String FLOW_ATTRIBUTE = 'restflow.flow'
 
     @Override
     void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
-        flow.log.send request.requestLine.method, request.requestLine.uri
+        def flow = (RestFlow)context.getAttribute(FLOW_ATTRIBUTE)
+        if (flow == null || !flow.log.isEnabled(CommLog.Level.HTTP)) {
+            return
+        }
+        def log = flow.log
+        log.send request.requestLine.method, request.requestLine.uri
         request.allHeaders.each { h ->
-            flow.log.send h.name + ':', h.value
+            log.send h.name + ':', h.value
+        }
+        def detail = log.bodyDetail
+        if (detail == CommLog.BodyDetail.NONE) {
+            return
         }
         HttpEntity entity = null
         if (request instanceof HttpEntityEnclosingRequest) {
             entity = request.entity
         }
-        flow.log.sendBody(entity ? new HttpBody(entity, StandardCharsets.UTF_8) : HttpBody.EMPTY)
+        if (entity == null) {
+            log.sendBody(HttpBody.EMPTY)
+        } else if (!isInMemory(entity)) {
+            // files, streams and generated content must not be read for logging
+            log.sendBody(HttpBody.streamed(entity.contentType?.value, entity.contentLength))
+        } else if (detail == CommLog.BodyDetail.METADATA) {
+            log.sendBody(HttpBody.metadata(entity.contentType?.value, entity.contentLength, StandardCharsets.UTF_8))
+        } else {
+            log.sendBody(new HttpBody(entity, StandardCharsets.UTF_8))
+        }
+    }
+
+    private static boolean isInMemory(HttpEntity entity) {
+        entity instanceof StringEntity || entity instanceof ByteArrayEntity
     }
 }
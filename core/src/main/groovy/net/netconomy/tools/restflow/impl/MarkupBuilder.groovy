@@ -51,7 +51,7 @@ class MarkupBuilder extends groovy.xml.MarkupBuilder {
         if (node == rootNode) {
             printer.flush()
             requestConfig.contentType = HTTP.XmlType
-            requestConfig.content = out.toString()
+            requestConfig.content(out.toString())
         }
         return ret
     }
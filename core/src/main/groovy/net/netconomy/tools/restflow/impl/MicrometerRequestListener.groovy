@@ -0,0 +1,72 @@
+package net.netconomy.tools.restflow.impl
+
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records the HTTP exchanges in a Micrometer registry:
+ *
+ * <ul>
+ *   <li>{@code <prefix>}: a timer for the latencies, the count is the
+ *     number of requests;</li>
+ *   <li>{@code <prefix>.sent}, {@code <prefix>.received}: the bytes sent
+ *     and received, if reported by the transport.</li>
+ * </ul>
+ *
+ * <p>The meters are tagged with {@code method}, {@code host}, {@code
+ * status} (the status class, e.g. "2xx" or "error" if the exchange
+ * failed), {@code uri} (the path template) and {@code exception} (the
+ * exception's simple class name or "none").
+ *
+ * <p>Micrometer is not a dependency of RESTflow, it must be on the class
+ * path to use this listener:
+ *
+ * <pre>
+ * requestListeners &lt;&lt; new MicrometerRequestListener(registry)
+ * </pre>
+ */
+class MicrometerRequestListener implements RequestListener {
+
+    static final String DEFAULT_PREFIX = 'restflow.requests'
+
+    private final MeterRegistry registry
+    private final String prefix
+
+    MicrometerRequestListener(MeterRegistry registry, String prefix = DEFAULT_PREFIX) {
+        this.registry = registry
+        this.prefix = prefix
+    }
+
+    @Override
+    void requestCompleted(RequestEvent event) {
+        def tags = Tags.of('method', event.request.method,
+                           'host', event.host,
+                           'status', event.statusClass,
+                           'uri', event.pathTemplate,
+                           'exception', event.error == null ? 'none' : event.error.getClass().simpleName)
+        Timer.builder(prefix).
+                description('RESTflow HTTP exchanges').
+                tags(tags).
+                register(registry).
+                record(event.durationNanos, TimeUnit.NANOSECONDS)
+        def metrics = event.request.metrics
+        if (metrics.bytesSent >= 0) {
+            DistributionSummary.builder(prefix + '.sent').
+                    baseUnit('bytes').
+                    tags(tags).
+                    register(registry).
+                    record(metrics.bytesSent)
+        }
+        if (metrics.bytesReceived >= 0) {
+            DistributionSummary.builder(prefix + '.received').
+                    baseUnit('bytes').
+                    tags(tags).
+                    register(registry).
+                    record(metrics.bytesReceived)
+        }
+    }
+}
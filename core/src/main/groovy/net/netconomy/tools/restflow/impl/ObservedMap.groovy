@@ -0,0 +1,144 @@
+package net.netconomy.tools.restflow.impl
+
+/**
+ * An insertion ordered map that calls a listener on each modification,
+ * including modifications through the views (e.g. {@code
+ * keySet().remove()}, {@code entry.setValue()}).
+ */
+class ObservedMap<K, V> extends AbstractMap<K, V> {
+
+    private final Map<K, V> map = new LinkedHashMap<>()
+    private final Runnable listener
+
+    ObservedMap(Runnable listener) {
+        this.listener = listener
+    }
+
+    @Override
+    int size() {
+        map.size()
+    }
+
+    @Override
+    boolean containsKey(Object key) {
+        map.containsKey(key)
+    }
+
+    @Override
+    V get(Object key) {
+        map.get(key)
+    }
+
+    @Override
+    V put(K key, V value) {
+        def prev = map.put(key, value)
+        listener.run()
+        return prev
+    }
+
+    @Override
+    V remove(Object key) {
+        if (map.containsKey(key)) {
+            def prev = map.remove(key)
+            listener.run()
+            return prev
+        } else {
+            return null
+        }
+    }
+
+    @Override
+    void clear() {
+        if (!map.isEmpty()) {
+            map.clear()
+            listener.run()
+        }
+    }
+
+    @Override
+    Set<Map.Entry<K, V>> entrySet() {
+        new ObservedEntrySet<K, V>(map.entrySet(), listener)
+    }
+
+    private static final class ObservedEntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+
+        private final Set<Map.Entry<K, V>> entries
+        private final Runnable listener
+
+        ObservedEntrySet(Set<Map.Entry<K, V>> entries, Runnable listener) {
+            this.entries = entries
+            this.listener = listener
+        }
+
+        @Override
+        int size() {
+            entries.size()
+        }
+
+        @Override
+        Iterator<Map.Entry<K, V>> iterator() {
+            def iterator = entries.iterator()
+            def listener = this.listener
+            new Iterator<Map.Entry<K, V>>() {
+                @Override
+                boolean hasNext() {
+                    iterator.hasNext()
+                }
+
+                @Override
+                Map.Entry<K, V> next() {
+                    new ObservedEntry<K, V>(iterator.next(), listener)
+                }
+
+                @Override
+                void remove() {
+                    iterator.remove()
+                    listener.run()
+                }
+            }
+        }
+    }
+
+    private static final class ObservedEntry<K, V> implements Map.Entry<K, V> {
+
+        private final Map.Entry<K, V> entry
+        private final Runnable listener
+
+        ObservedEntry(Map.Entry<K, V> entry, Runnable listener) {
+            this.entry = entry
+            this.listener = listener
+        }
+
+        @Override
+        K getKey() {
+            entry.getKey()
+        }
+
+        @Override
+        V getValue() {
+            entry.getValue()
+        }
+
+        @Override
+        V setValue(V value) {
+            def prev = entry.setValue(value)
+            listener.run()
+            return prev
+        }
+
+        @Override
+        boolean equals(Object o) {
+            entry.equals(o)
+        }
+
+        @Override
+        int hashCode() {
+            entry.hashCode()
+        }
+
+        @Override
+        String toString() {
+            entry.toString()
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package net.netconomy.tools.restflow.impl
+
+import java.nio.charset.Charset
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.regex.Pattern
+
+/**
+ * A request path with variables, e.g. <code>carts/{id}/entries</code>. The
+ * literal parts are encoded once, parsed templates are cached.
+ *
+ * <p>Variables are expanded using the query parameters of the request, the
+ * parameters used for the path will be removed from the query. Values are
+ * encoded as a path segment, i.e. a '/' in a value will be encoded.
+ *
+ * <p>A query or fragment in the path (e.g. <code>search?q=x</code>) is
+ * taken as it is, without expanding variables or encoding.
+ */
+final class PathTemplate {
+
+    private static final int MAX_CACHE_SIZE = 1024
+    private static final Pattern VARIABLE_RE = ~/\{([A-Za-z_][A-Za-z0-9_.\-]*)}/
+
+    private static final ConcurrentMap<String, PathTemplate> CACHE = new ConcurrentHashMap<>()
+
+    final String path
+    final Charset charset
+    /**
+     * The query given in the path (without '?') or {@code null}.
+     */
+    final String query
+    /**
+     * The fragment given in the path (without '#') or {@code null}.
+     */
+    final String fragment
+    private final String[] literals
+    private final String[] variables
+
+    private PathTemplate(String path, Charset charset) {
+        this.path = path
+        this.charset = charset
+        String pathOnly = path
+        String query = null
+        String fragment = null
+        int fragmentPos = pathOnly.indexOf('#')
+        if (fragmentPos >= 0) {
+            fragment = pathOnly.substring(fragmentPos + 1)
+            pathOnly = pathOnly.substring(0, fragmentPos)
+        }
+        int queryPos = pathOnly.indexOf('?')
+        if (queryPos >= 0) {
+            query = pathOnly.substring(queryPos + 1)
+            pathOnly = pathOnly.substring(0, queryPos)
+        }
+        this.query = query
+        this.fragment = fragment
+        List<String> literals = []
+        List<String> variables = []
+        def m = VARIABLE_RE.matcher(pathOnly)
+        int pos = 0
+        while (m.find()) {
+            literals.add(UriEncoding.appendPath(new StringBuilder(), pathOnly.substring(pos, m.start()), charset).toString())
+            variables.add(m.group(1))
+            pos = m.end()
+        }
+        literals.add(UriEncoding.appendPath(new StringBuilder(), pathOnly.substring(pos), charset).toString())
+        this.literals = literals as String[]
+        this.variables = variables as String[]
+    }
+
+    /**
+     * Get the template for the given path.
+     */
+    static PathTemplate of(String path, Charset charset) {
+        def template = CACHE.get(path)
+        if (template == null || template.charset != charset) {
+            if (CACHE.size() >= MAX_CACHE_SIZE) {
+                // paths are usually static, this happens only if scripts build paths dynamically
+                CACHE.clear()
+            }
+            template = new PathTemplate(path, charset)
+            CACHE.put(path, template)
+        }
+        return template
+    }
+
+    boolean getHasVariables() {
+        variables.length > 0
+    }
+
+    List<String> getVariables() {
+        variables as List
+    }
+
+    /**
+     * Append the expanded path without query and fragment to the buffer, the values of the variables
+     * will be removed from the map.
+     *
+     * @throws IllegalArgumentException If a variable has no value.
+     */
+    StringBuilder expand(StringBuilder buf, Map<String, ?> values) {
+        buf.append(literals[0])
+        for (int i = 0; i < variables.length; i++) {
+            def name = variables[i]
+            if (!values.containsKey(name)) {
+                throw new IllegalArgumentException("No value for path variable {$name} in $path")
+            }
+            UriEncoding.appendPathSegment(buf, values.get(name) as String, charset)
+            buf.append(literals[i + 1])
+        }
+        for (name in variables) {
+            values.remove(name)
+        }
+        return buf
+    }
+}
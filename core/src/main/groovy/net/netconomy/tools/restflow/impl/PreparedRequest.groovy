@@ -0,0 +1,75 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.HTTP
+import net.netconomy.tools.restflow.dsl.RequestConfig
+import org.apache.http.entity.ContentType
+
+import java.nio.charset.Charset
+
+/**
+ * A fully resolved request, ready to be sent by a {@link HttpTransport}.
+ */
+final class PreparedRequest {
+
+    private static final Set<String> NO_CHARSET_TYPES = [HTTP.JsonType] as Set
+
+    final String method
+    final URI uri
+    /**
+     * The path template (without leading '/') if the path contains
+     * variables, {@code null} otherwise.
+     */
+    final String pathTemplate
+    final Map<String, String> headers
+    /**
+     * The {@code Authorization} header for the request's authentication or
+     * {@code null}. Sent in addition to the headers.
+     */
+    final String authorization
+    /**
+     * The resolved request configuration, the body is taken from here.
+     */
+    final RequestConfig config
+    /**
+     * The timings of the exchange, recorded by the transport.
+     */
+    final ExchangeMetrics metrics = new ExchangeMetrics()
+
+    PreparedRequest(String method, URI uri, String pathTemplate, Map<String, String> headers, String authorization,
+                    RequestConfig config) {
+        this.method = method
+        this.uri = uri
+        this.pathTemplate = pathTemplate
+        this.headers = headers.asImmutable()
+        this.authorization = authorization
+        this.config = config
+    }
+
+    boolean getHasContent() {
+        config.content != null || config.rawContent != null || config.streamedContent
+    }
+
+    /**
+     * The content type of the body or {@code null}. Text content will
+     * include the charset except for types that don't allow it (JSON).
+     */
+    ContentType getContentType() {
+        if (config.content != null) {
+            createContentType(config.contentType, config.charset)
+        } else if (config.rawContent != null || config.streamedContent) {
+            createContentType(config.contentType)
+        } else {
+            null
+        }
+    }
+
+    private static ContentType createContentType(String mimeType, Charset charset = null) {
+        if (!mimeType) {
+            return null
+        } else if (NO_CHARSET_TYPES.contains(mimeType)) {
+            return ContentType.create(mimeType, (Charset)null)
+        } else {
+            return ContentType.create(mimeType, (Charset)charset)
+        }
+    }
+}
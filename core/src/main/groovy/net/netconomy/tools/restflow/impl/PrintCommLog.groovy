@@ -3,13 +3,24 @@ package net.netconomy.tools.restflow.impl
  * @since 2018-10-18
  * @author Raffael Herzog (r.herzog@netconomy.net)
  */
-class PrintCommLog implements CommLog {
+class PrintCommLog implements CommLog, Flushable {
 
     private static LINE_RE = ~'(\n|\r\n?)'
 
     volatile boolean brief = false
     volatile PrintStream out = null
 
+    @Override
+    boolean isEnabled(Level level) {
+        return level != Level.DEBUG
+    }
+
+    @Override
+    BodyDetail getBodyDetail() {
+        // brief logs print the type and length only
+        return brief ? BodyDetail.METADATA : BodyDetail.FULL
+    }
+
     @Override
     void info(Object... msg) {
         print('|', msg)
@@ -48,18 +59,28 @@ class PrintCommLog implements CommLog {
     private void logBody(HttpBody body, boolean pretty, Closure<?> logger) {
         if (body.empty) {
             logger.call '~~~ empty body ~~~'
-        } else if (body.content) {
+        } else if (body.streamed) {
+            logger.call "~~~ streamed content: $body.mimeType, ${body.contentLength < 0 ? 'unknown length' : "$body.contentLength bytes"} ~~~"
+        } else if (body.spilled) {
+            logger.call "~~~ ${body.text ? 'text' : 'binary'} content spilled to disk: $body.mimeType, $body.contentLength bytes ~~~"
+        } else if (body.text && body.contentLength > 0) {
             def type = 'text content'
-            if (pretty && body.prettyPrintable) {
+            pretty = pretty && body.prettyPrintable
+            if (pretty) {
                 type = 'pretty printed ' + type
             }
             logger.call "~~~ $type: $body.mimeType ~~~"
-            if (!brief) {
-                (pretty ? body.prettyContent : body.content).eachLine {logger.call it}
+            if (!brief && !body.metadataOnly) {
+                if (pretty) {
+                    body.prettyContent.eachLine {logger.call it}
+                } else {
+                    // decode chunk-wise, the body may not have been decoded yet
+                    body.openReader().withReader {reader -> reader.eachLine {line -> logger.call line}}
+                }
                 logger.call '~~~ end content ~~~'
             }
         } else {
-            logger.call "~~~ binary content: $body.mimeType, $body.rawContent.length bytes ~~~"
+            logger.call "~~~ binary content: $body.mimeType, $body.contentLength bytes ~~~"
         }
     }
 
@@ -67,6 +88,11 @@ class PrintCommLog implements CommLog {
     void debug(Object... msg) {
     }
 
+    @Override
+    void flush() {
+        (out ?: System.out).flush()
+    }
+
     private void print(String head, Object... msg) {
         Util.splitMessage(msg).forEach {(out ?: System.out).println head + ' ' + it}
     }
@@ -7,8 +7,18 @@ import org.slf4j.LoggerFactory
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.function.BiFunction
 import java.util.regex.Pattern
 
+/**
+ * Finds and applies profiles. The compiled profile classes are cached per
+ * URI, a profile will only be recompiled if its file has been modified
+ * (or for other URIs, its content has changed). Each application runs a
+ * new instance of the script class.
+ */
 class ProfileLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProfileLoader.class)
@@ -21,6 +31,7 @@ class ProfileLoader {
 
     private final ClassLoader classLoader
     private final List<Path> profilesPath
+    private final ConcurrentMap<URI, CompiledProfile> compiledProfiles = new ConcurrentHashMap<>()
 
     ProfileLoader(ClassLoader classLoader, List<Path> profilesPath = []) {
         this.classLoader = classLoader
@@ -65,8 +76,54 @@ class ProfileLoader {
     private void doApply(URI uri, RestFlow target, Map<String, Object> args) {
         target.log.debug('applying profile from', uri, 'with arguments', args)
         LOG.debug('Applying profile from {} with arguments {}', uri, args)
-        def shell = RestFlowScripts.newGroovyShell(new RestFlowScripts.ReadOnlyBinding(), classLoader)
+        def profile = compiled(uri)
         def argsBinding = new RestFlowScripts.ReadOnlyBinding([args: (args ?: Collections.emptyMap())])
-        RestFlowScripts.run(RestFlowScripts.parse(shell, argsBinding, target, uri))
+        def script = profile.scriptClass.getDeclaredConstructor().newInstance()
+        RestFlowScripts.run(RestFlowScripts.init(profile.shell, script, argsBinding, target))
+    }
+
+    private CompiledProfile compiled(URI uri) {
+        def stamp = stamp(uri)
+        // may be changed at runtime, e.g. by the clients of the daemon
+        boolean compileStatic = RestFlowScripts.compileStatic
+        compiledProfiles.compute(uri, {URI u, CompiledProfile cached ->
+            if (cached != null && cached.stamp == stamp && cached.compileStatic == compileStatic) {
+                return cached
+            }
+            LOG.debug('Compiling profile {}', u)
+            def shell = RestFlowScripts.newGroovyShell(new RestFlowScripts.ReadOnlyBinding(),
+                                                       RestFlowScripts.newCompilerConfiguration(true, compileStatic),
+                                                       classLoader)
+            def script = RestFlowScripts.parseScript(shell, new GroovyCodeSource(u)) as RestFlowScript
+            new CompiledProfile(stamp, compileStatic, shell, script.getClass())
+        } as BiFunction<URI, CompiledProfile, CompiledProfile>)
+    }
+
+    /**
+     * The modification time and size of files, a hash of the content for
+     * other URIs (e.g. resources in JARs).
+     */
+    private static String stamp(URI uri) {
+        if (uri.scheme == 'file') {
+            def path = Paths.get(uri)
+            return "${Files.getLastModifiedTime(path).toMillis()}:${Files.size(path)}"
+        } else {
+            return MessageDigest.getInstance('SHA-256').digest(uri.toURL().bytes).encodeHex().toString()
+        }
+    }
+
+    private static final class CompiledProfile {
+        final String stamp
+        final boolean compileStatic
+        final GroovyShell shell
+        final Class<? extends RestFlowScript> scriptClass
+
+        CompiledProfile(String stamp, boolean compileStatic, GroovyShell shell,
+                        Class<? extends RestFlowScript> scriptClass) {
+            this.stamp = stamp
+            this.compileStatic = compileStatic
+            this.shell = shell
+            this.scriptClass = scriptClass
+        }
     }
 }
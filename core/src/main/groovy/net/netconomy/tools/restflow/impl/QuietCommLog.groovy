@@ -16,6 +16,16 @@ class QuietCommLog implements CommLog {
         return false
     }
 
+    @Override
+    boolean isEnabled(Level level) {
+        return false
+    }
+
+    @Override
+    BodyDetail getBodyDetail() {
+        return BodyDetail.NONE
+    }
+
     @Override
     void info(Object... msg) {
     }
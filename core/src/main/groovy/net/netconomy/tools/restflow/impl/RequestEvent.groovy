@@ -0,0 +1,114 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.Response
+import net.netconomy.tools.restflow.dsl.RestFlow
+
+import java.util.regex.Pattern
+
+/**
+ * A completed HTTP exchange, passed to the {@link RequestListener}s.
+ */
+final class RequestEvent {
+
+    private static final Pattern ID_SEGMENT_RE =
+            ~/(?i)\d+|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}|[0-9a-f]{16,}/
+
+    final RestFlow flow
+    final PreparedRequest request
+    /**
+     * The response or {@code null} if the exchange failed.
+     */
+    final Response response
+    /**
+     * The exception if the exchange failed, {@code null} otherwise.
+     */
+    final Throwable error
+    /**
+     * The value of {@link System#nanoTime()} when the request was handed
+     * to the transport.
+     */
+    final long startNanos
+    final long durationNanos
+
+    private String label = null
+    private String pathTemplate = null
+
+    RequestEvent(RestFlow flow, PreparedRequest request, Response response, Throwable error,
+                 long startNanos, long durationNanos) {
+        this.flow = flow
+        this.request = request
+        this.response = response
+        this.error = error
+        this.startNanos = startNanos
+        this.durationNanos = durationNanos
+    }
+
+    /**
+     * {@code true} if the exchange failed or the server responded with a
+     * status code of 400 or above.
+     */
+    boolean getFailed() {
+        error != null || response == null || response.statusCode >= 400
+    }
+
+    /**
+     * A label for aggregating similar requests: the method and the path
+     * template if the path has variables. Otherwise, numeric IDs, UUIDs and
+     * long hex strings will be replaced by <code>{id}</code>, e.g. <code>GET
+     * /carts/{id}/entries</code>.
+     */
+    String getLabel() {
+        if (label == null) {
+            label = request.method + ' ' + getPathTemplate()
+        }
+        return label
+    }
+
+    /**
+     * The path template of the request or the path with IDs replaced, as
+     * used in the {@link #getLabel() label}.
+     */
+    String getPathTemplate() {
+        if (pathTemplate == null) {
+            pathTemplate = request.pathTemplate != null ? '/' + request.pathTemplate
+                                                        : pathTemplate(request.uri.rawPath)
+        }
+        return pathTemplate
+    }
+
+    /**
+     * The host and port (if specified) of the request.
+     */
+    String getHost() {
+        request.uri.port < 0 ? request.uri.host : request.uri.host + ':' + request.uri.port
+    }
+
+    /**
+     * The class of the status code (e.g. "2xx") or "error" if the exchange
+     * failed without response.
+     */
+    String getStatusClass() {
+        response == null ? 'error' : "${response.statusCode.intdiv(100)}xx"
+    }
+
+    static String pathTemplate(String path) {
+        if (!path) {
+            return '/'
+        }
+        def buf = new StringBuilder(path.length())
+        int start = 0
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start)
+            if (end < 0) {
+                end = path.length()
+            }
+            def segment = path.substring(start, end)
+            buf.append(ID_SEGMENT_RE.matcher(segment).matches() ? '{id}' : segment)
+            if (end < path.length()) {
+                buf.append('/')
+            }
+            start = end + 1
+        }
+        return buf.toString()
+    }
+}
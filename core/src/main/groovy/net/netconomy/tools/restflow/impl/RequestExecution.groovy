@@ -4,89 +4,163 @@ import net.netconomy.tools.restflow.dsl.HTTP
 import net.netconomy.tools.restflow.dsl.RequestConfig
 import net.netconomy.tools.restflow.dsl.Response
 import net.netconomy.tools.restflow.dsl.RestFlow
-import org.apache.http.HttpEntity
-import org.apache.http.HttpEntityEnclosingRequest
-import org.apache.http.HttpResponse
-import org.apache.http.client.HttpClient
-import org.apache.http.client.methods.HttpRequestBase
-import org.apache.http.client.protocol.HttpClientContext
-import org.apache.http.entity.ByteArrayEntity
-import org.apache.http.entity.ContentType
-import org.apache.http.entity.StringEntity
-import org.apache.http.protocol.BasicHttpContext
-
-import java.nio.charset.Charset
+
 import java.nio.charset.StandardCharsets
-import java.util.function.Function
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
 
 final class RequestExecution {
 
-    private static final Set<String> NO_CHARSET_TYPES = [HTTP.JsonType] as Set
     private static final ThreadLocal<Set<PreRequestHandler>> nowExecutingHandlers = new ThreadLocal<>()
 
-    static Response execute(HttpClient httpBackend, HttpRequestBase request,
-                            RestFlow flow, RequestConfig config) {
-        config.requestCharset(firstNonNull(config, {it.requestCharset}, StandardCharsets.UTF_8))
-        config.scheme(firstNonNull(config, {it.scheme}, HTTP.Scheme.HTTPS))
-        config.host(firstNonNull(config, {it.host}))
-        config.path(config.buildPath())
-        config.query(coalesceStringMap([:], config, {it.query}))
-        config.header(coalesceStringMap([:], config, {it.headers}))
-        config.authentication = firstNonNull(config, {it.authentication}, null)
+    private static final int MAX_URI_BUFFER = 8192
+    private static final ThreadLocal<StringBuilder> URI_BUFFER = ThreadLocal.withInitial {new StringBuilder(256)}
+
+    static Response execute(RestFlow flow, String method, RequestConfig config) {
+        def request = prepare(flow, method, config)
+        if (!flow.requestListeners) {
+            return flow.transport.execute(flow, request)
+        }
+        long start = System.nanoTime()
+        Response response
+        try {
+            response = flow.transport.execute(flow, request)
+        } catch (Throwable e) {
+            notifyListeners(flow, request, null, e, start)
+            throw e
+        }
+        notifyListeners(flow, request, response, null, start)
+        return response
+    }
+
+    /**
+     * Prepare the request on the calling thread and run the HTTP exchange
+     * asynchronously.
+     */
+    static CompletableFuture<Response> executeAsync(RestFlow flow, String method, RequestConfig config) {
+        def request = prepare(flow, method, config)
+        if (!flow.requestListeners) {
+            return flow.transport.executeAsync(flow, request)
+        }
+        long start = System.nanoTime()
+        flow.transport.executeAsync(flow, request).whenComplete { Response response, Throwable error ->
+            notifyListeners(flow, request, response, error instanceof CompletionException ? error.cause : error, start)
+        }
+    }
+
+    private static void notifyListeners(RestFlow flow, PreparedRequest request,
+                                        Response response, Throwable error, long start) {
+        def event = new RequestEvent(flow, request, response, error, start, System.nanoTime() - start)
+        for (l in flow.requestListeners) {
+            try {
+                l.requestCompleted(event)
+            } catch (Exception e) {
+                flow.log.warn "Request listener $l failed: $e"
+            }
+        }
+    }
+
+    /**
+     * Resolve the request configuration, run the pre-request handlers and
+     * build the request for the transport.
+     */
+    static PreparedRequest prepare(RestFlow flow, String method, RequestConfig config) {
+        def effective = config.effectiveConfig()
+        config.requestCharset(effective.requestCharset ?: StandardCharsets.UTF_8)
+        config.scheme(effective.scheme ?: HTTP.Scheme.HTTPS)
+        if (effective.host == null) {
+            throw new IllegalStateException('Required value not set')
+        }
+        config.host(effective.host)
+        config.path(effective.path)
+        config.query(toStringMap(effective.query))
+        config.header(toStringMap(effective.headers))
+        config.authentication = effective.authentication
         runPreRequestHandlers(flow, config)
-        request.setURI(new URI(new StringBuilder().with {
-            append config.scheme.uriScheme
-            append '://'
-            append config.host
-            append '/'
-            append config.path
-            if (config.query) {
-                append '?'
-                def first = true
-                config.query.each { k, v ->
-                    if (first) {
-                        first = false
-                    } else {
-                        append '&'
-                    }
-                    append URLEncoder.encode(k, config.requestCharset.name())
-                    append '='
-                    append URLEncoder.encode(v as String, config.requestCharset.name())
+        def charset = config.requestCharset
+        def template = PathTemplate.of(config.path, charset)
+        def buf = URI_BUFFER.get()
+        buf.setLength(0)
+        buf.append(config.scheme.uriScheme).append('://').append(config.host).append('/')
+        template.expand(buf, config.query)
+        if (template.query != null || config.query) {
+            buf.append('?')
+            def first = true
+            if (template.query != null) {
+                buf.append(template.query)
+                first = template.query.isEmpty()
+            }
+            for (e in config.query.entrySet()) {
+                if (first) {
+                    first = false
+                } else {
+                    buf.append('&')
                 }
+                UriEncoding.appendQueryComponent(buf, e.key, charset).append('=')
+                UriEncoding.appendQueryComponent(buf, e.value as String, charset)
             }
-            it as String
-        }))
-        flow.log.send('URI', request.getURI())
+        }
+        if (template.fragment != null) {
+            buf.append('#').append(template.fragment)
+        }
+        def uri = new URI(buf.toString())
+        if (buf.capacity() > MAX_URI_BUFFER) {
+            URI_BUFFER.remove()
+        }
+        flow.log.send('URI', uri)
+        Map<String, String> headers = new LinkedHashMap<>()
         config.headers.each { k, v ->
-            request.setHeader(k, v as String)
+            headers.put(k, v as String)
         }
+        String authorization = null
         if (config.authentication) {
-            request.addHeader(HTTP.Authorization,
-                              config.authentication.type.encodeAuthHeader(config.authentication.evidence))
-        }
-        HttpEntity entity = null
-        if (config.content != null) {
-            entity = new StringEntity(config.content, (ContentType) createContentType(config.contentType, config.charset))
-        } else if (config.rawContent != null) {
-            entity = new ByteArrayEntity(config.rawContent, (ContentType) createContentType(config.contentType))
-        }
-        if (entity != null) {
-            if (!(request instanceof HttpEntityEnclosingRequest)) {
-                throw new UnsupportedOperationException("Content not supported for ${request.getClass().getSimpleName()}")
-            }
-            request.entity = entity
-        }
-        def httpContext = new BasicHttpContext()
-        httpContext.setAttribute(HttpClientContext.COOKIE_STORE,
-            flow.cookies.enabled ? flow.cookies.store : NoCookiesStore.INSTANCE)
-        return httpBackend.execute(request, httpContext).withCloseable {HttpResponse resp ->
-            flow.log.recv "$resp.statusLine.statusCode ${HTTP.CodeNames.get(resp.statusLine.statusCode, '?')}:",
-                          resp.statusLine.reasonPhrase
-            resp.allHeaders.each { h ->
-                flow.log.recv h.name + ':', h.value
+            authorization = config.authentication.type.encodeAuthHeader(config.authentication.evidence)
+        }
+        return new PreparedRequest(method, uri, template.hasVariables ? template.path : null, headers, authorization,
+                                   config)
+    }
+
+    /**
+     * Log the response status and headers and create the response. Called
+     * by the {@link HttpTransport} as soon as the response headers have
+     * been received.
+     *
+     * @param body Creates the response body, called after logging the
+     *             headers.
+     */
+    static Response receive(RestFlow flow, PreparedRequest request, int statusCode, String reasonPhrase,
+                            List<? extends Map.Entry<String, String>> headers, Closure<HttpBody> body) {
+        def metrics = request.metrics
+        metrics.headersReceived()
+        def logHttp = flow.log.isEnabled(CommLog.Level.HTTP)
+        if (logHttp) {
+            flow.log.recv "$statusCode ${HTTP.CodeNames.get(statusCode, '?')}:", reasonPhrase
+        }
+        Map<String, String> headerMap = new LinkedHashMap<>()
+        headers.each { h ->
+            if (logHttp) {
+                flow.log.recv h.key + ':', h.value
             }
-            return new Response(flow, resp)
+            headerMap.put(h.key, h.value)
         }
+        def responseBody = body.call()
+        metrics.finish()
+        metrics.bytesReceived = headSize(metrics.protocol, statusCode, reasonPhrase, headers) +
+                Math.max(0L, responseBody.contentLength)
+        return new Response(flow, statusCode, reasonPhrase, headerMap, responseBody, metrics)
+    }
+
+    /**
+     * The size of the status line and headers in HTTP/1.1 format.
+     */
+    private static long headSize(String protocol, int statusCode, String reasonPhrase,
+                                 List<? extends Map.Entry<String, String>> headers) {
+        // "HTTP/1.1 200 OK\r\n", "Name: value\r\n" and the final "\r\n"
+        long size = (protocol ?: 'HTTP/1.1').length() + 5 + (reasonPhrase ?: '').length() + 2
+        for (h in headers) {
+            size += h.key.length() + 2 + (h.value ?: '').length() + 2
+        }
+        return size + 2
     }
 
     private static void runPreRequestHandlers(RestFlow flow, RequestConfig config) {
@@ -114,42 +188,12 @@ final class RequestExecution {
         }
     }
 
-    private static Map<String, String> coalesceStringMap(Map<String, String> map, RequestConfig config,
-                                                         Function<? super RequestConfig, Map<String, ?>> getter) {
-        if (config == null) {
-            return map
-        }
-        coalesceStringMap(map, config.parent, getter)
-        getter.apply(config).each { k, v ->
-            map.put(k as String, v as String)
-        }
-        return map
-    }
-
-    private static ContentType createContentType(String mimeType, Charset charset = null) {
-        if (!mimeType) {
-            return null
-        } else if (NO_CHARSET_TYPES.contains(mimeType)) {
-            return ContentType.create(mimeType, (Charset)null)
-        } else {
-            return ContentType.create(mimeType, charset)
-        }
-    }
-
-    static <T> T firstNonNull(RequestConfig config, Function<? super RequestConfig, T> getter, T fallback) {
-        T value = getter.apply(config)
-        if (value == null) {
-            value = (T)(config.parent ? firstNonNull(config.parent, getter, fallback) : fallback)
-        }
-        return value
-    }
-
-    static <T> T firstNonNull(RequestConfig config, Function<? super RequestConfig, T> getter) {
-        T value = firstNonNull(config, getter, null)
-        if (value == null) {
-            throw new IllegalStateException('Required value not set')
+    private static Map<String, String> toStringMap(Map<String, ?> map) {
+        Map<String, String> result = new LinkedHashMap<>()
+        map.each { k, v ->
+            result.put(k, v as String)
         }
-        return value
+        return result
     }
 
     /**
@@ -161,32 +205,34 @@ final class RequestExecution {
     static String doBuildPath(List<String> fragments) {
         StringBuilder buf = new StringBuilder()
         for (p in fragments) {
-            if (p) {
-                if (p.startsWith('/')) {
-                    p = p.substring(1)
-                }
-                if (p.startsWith('/')) {
-                    // absolute path
-                    buf.setLength(0)
-                    buf.append(p.substring(1))
-                } else {
-                    if (buf.length() > 0 && buf.charAt(buf.length() - 1) != (char) '/') {
-                        buf.append '/'
-                    }
-                    buf.append(p)
-                }
-            }
+            appendPathFragment(buf, p)
         }
         return buf.toString()
     }
 
-    static <T> List<T> buildList(RequestConfig config, Function<? super RequestConfig, T> getter,
-                                 List<T> list = new ArrayList()) {
-        if (config.parent != null) {
-            buildList(config.parent, getter, list)
+    /**
+     * Append a path fragment to a path built by {@link #doBuildPath
+     * doBuildPath()}.
+     *
+     * @return The buffer.
+     */
+    static StringBuilder appendPathFragment(StringBuilder buf, String p) {
+        if (p) {
+            if (p.startsWith('/')) {
+                p = p.substring(1)
+            }
+            if (p.startsWith('/')) {
+                // absolute path
+                buf.setLength(0)
+                buf.append(p.substring(1))
+            } else {
+                if (buf.length() > 0 && buf.charAt(buf.length() - 1) != (char) '/') {
+                    buf.append '/'
+                }
+                buf.append(p)
+            }
         }
-        list.add(getter.apply(config))
-        return list
+        return buf
     }
 
 }
@@ -0,0 +1,14 @@
+package net.netconomy.tools.restflow.impl
+
+/**
+ * Gets notified about each completed HTTP exchange of a RESTflow instance,
+ * e.g. for collecting metrics. Listeners are called on the thread that
+ * completed the exchange and must therefore be thread-safe.
+ *
+ * @see net.netconomy.tools.restflow.dsl.RestFlow#requestListeners
+ */
+interface RequestListener {
+
+    void requestCompleted(RequestEvent event)
+
+}
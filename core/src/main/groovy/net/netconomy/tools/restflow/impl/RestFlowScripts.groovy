@@ -1,17 +1,47 @@
 package net.netconomy.tools.restflow.impl
 
+import groovy.transform.CompileStatic
 import groovy.transform.ThreadInterrupt
 import net.netconomy.tools.restflow.dsl.RestFlow
 import org.codehaus.groovy.control.CompilerConfiguration
 import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer
+import org.codehaus.groovy.runtime.InvokerHelper
 
 final class RestFlowScripts {
 
     public static final String DEFAULT_CODEBASE = "/restflow/script"
 
-    static CompilerConfiguration newCompilerConfiguration(boolean threadInterrupt = true) {
+    static final String COMPILE_STATIC_PROPERTY = 'restflow.compileStatic'
+
+    private static volatile boolean compileStaticDefault = Boolean.getBoolean(COMPILE_STATIC_PROPERTY)
+
+    /**
+     * Whether scripts and profiles are compiled statically by default,
+     * initialised from the system property {@value #COMPILE_STATIC_PROPERTY}.
+     */
+    static boolean isCompileStatic() {
+        return compileStaticDefault
+    }
+
+    static void setCompileStatic(boolean compileStatic) {
+        compileStaticDefault = compileStatic
+    }
+
+    /**
+     * @param compileStatic Compile the scripts using {@code @CompileStatic}
+     *                      with the {@link RestFlowTypeChecking} extension,
+     *                      based on {@link StaticRestFlowScript}.
+     */
+    static CompilerConfiguration newCompilerConfiguration(boolean threadInterrupt = true,
+                                                          boolean compileStatic = isCompileStatic()) {
         def config = new CompilerConfiguration()
-        config.scriptBaseClass = RestFlowScript.name
+        if (compileStatic) {
+            config.scriptBaseClass = StaticRestFlowScript.name
+            config.addCompilationCustomizers(new ASTTransformationCustomizer(
+                    [extensions: [RestFlowTypeChecking.name]], CompileStatic))
+        } else {
+            config.scriptBaseClass = RestFlowScript.name
+        }
         if (threadInterrupt) {
             config.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt))
         }
@@ -27,7 +57,22 @@ final class RestFlowScripts {
     static GroovyShell newGroovyShell(Binding binding,
                                       CompilerConfiguration config,
                                       ClassLoader parentClassLoader = RestFlowScript.classLoader) {
-        new GroovyShell(parentClassLoader, binding, config)
+        new ConfiguredShell(parentClassLoader, binding, config)
+    }
+
+    /**
+     * Parse the script using the {@link ScriptCache#getGlobal() script
+     * cache}, if enabled and the shell has been created by {@link
+     * #newGroovyShell(groovy.lang.Binding, org.codehaus.groovy.control.CompilerConfiguration, java.lang.ClassLoader)
+     * newGroovyShell()}.
+     */
+    static Script parseScript(GroovyShell shell, GroovyCodeSource source) {
+        def cache = ScriptCache.global
+        if (cache == null || !(shell instanceof ConfiguredShell)) {
+            return shell.parse(source)
+        }
+        def scriptClass = cache.scriptClass(source, ((ConfiguredShell)shell).config, shell.classLoader)
+        InvokerHelper.createScript(scriptClass, shell.context)
     }
 
     static RestFlowScript parse(RestFlow restFlow, String script, String fileName) {
@@ -56,15 +101,17 @@ final class RestFlowScripts {
 
     static RestFlowScript parse(GroovyShell shell, Binding binding, RestFlow restFlow, String script, String fileName) {
         def source = new GroovyCodeSource(script, fileName, DEFAULT_CODEBASE)
-        init(shell, shell.parse(source) as RestFlowScript, binding, restFlow)
+        init(shell, parseScript(shell, source) as RestFlowScript, binding, restFlow)
     }
 
     static RestFlowScript parse(GroovyShell shell, Binding binding, RestFlow restFlow, File file) {
-        init(shell, shell.parse(file) as RestFlowScript, binding, restFlow)
+        def encoding = shell instanceof ConfiguredShell ? ((ConfiguredShell)shell).config.sourceEncoding
+                                                        : CompilerConfiguration.DEFAULT.sourceEncoding
+        init(shell, parseScript(shell, new GroovyCodeSource(file, encoding)) as RestFlowScript, binding, restFlow)
     }
 
     static RestFlowScript parse(GroovyShell shell, Binding binding, RestFlow restFlow, URI uri) {
-        init(shell, shell.parse(uri) as RestFlowScript, binding, restFlow)
+        init(shell, parseScript(shell, new GroovyCodeSource(uri)) as RestFlowScript, binding, restFlow)
     }
 
     static RestFlowScript init(GroovyShell shell, RestFlowScript script, Binding binding, RestFlow restFlow) {
@@ -114,6 +161,18 @@ final class RestFlowScripts {
         }
     }
 
+    /**
+     * A shell that remembers its compiler configuration for the {@link
+     * ScriptCache}.
+     */
+    static class ConfiguredShell extends GroovyShell {
+        final CompilerConfiguration config
+        ConfiguredShell(ClassLoader parent, Binding binding, CompilerConfiguration config) {
+            super(parent, binding, config)
+            this.config = config
+        }
+    }
+
     static class ReadOnlyBinding extends Binding {
         ReadOnlyBinding(Map<String, Object> presetBindings = Collections.emptyMap()) {
             if (presetBindings) {
@@ -0,0 +1,83 @@
+package net.netconomy.tools.restflow.impl
+
+import groovy.xml.slurpersupport.GPathResult
+import org.codehaus.groovy.ast.ClassHelper
+import org.codehaus.groovy.ast.ClassNode
+import org.codehaus.groovy.ast.MethodNode
+import org.codehaus.groovy.ast.expr.ArgumentListExpression
+import org.codehaus.groovy.ast.expr.Expression
+import org.codehaus.groovy.ast.expr.MethodCall
+import org.codehaus.groovy.ast.expr.PropertyExpression
+import org.codehaus.groovy.ast.expr.VariableExpression
+import org.codehaus.groovy.ast.tools.GeneralUtils
+import org.codehaus.groovy.transform.stc.GroovyTypeCheckingExtensionSupport
+import org.codehaus.groovy.transform.stc.StaticTypesMarker
+
+/**
+ * The type checking extension for statically compiled scripts and
+ * profiles. Everything must be resolvable at compile time, except:
+ *
+ * <ul>
+ *   <li>variables that aren't declared, these are the values in {@link
+ *     net.netconomy.tools.restflow.dsl.RestFlow#ext ext} and the variables
+ *     of the binding (e.g. {@code args});</li>
+ *   <li>properties and methods of untyped values and GPath results, e.g.
+ *     {@code response.json.items.size()} or {@code response.xml.a.text()}.</li>
+ * </ul>
+ *
+ * These are looked up at runtime.
+ */
+class RestFlowTypeChecking extends GroovyTypeCheckingExtensionSupport.TypeCheckingDSL {
+
+    private static final ClassNode GPATH_RESULT = ClassHelper.make(GPathResult)
+
+    @Override
+    Object run() {
+        unresolvedVariable {VariableExpression var ->
+            dynamic(var)
+        }
+        unresolvedProperty {PropertyExpression pexp ->
+            def type = getType(pexp.objectExpression)
+            if (isDynamic(type)) {
+                if (type != ClassHelper.OBJECT_TYPE) {
+                    // the compiler only supports dynamic properties on receivers that aren't GroovyObjects
+                    def receiver = GeneralUtils.castX(ClassHelper.OBJECT_TYPE, pexp.objectExpression)
+                    storeType(receiver, ClassHelper.OBJECT_TYPE)
+                    pexp.objectExpression = receiver
+                }
+                dynamic(pexp)
+            }
+        }
+        methodNotFound {ClassNode receiver, String name, ArgumentListExpression argList, ClassNode[] argTypes,
+                        MethodCall call ->
+            isDynamic(receiver) ? [dynamic(call)] : null
+        }
+    }
+
+    /**
+     * Make the expression dynamic, but keep the static call site writer
+     * for the rest of the method: {@code makeDynamic()} switches the whole
+     * method to dynamic call sites and the Groovy 4 compiler then fails
+     * to generate code for operators like {@code /} in the same method.
+     */
+    private MethodNode dynamic(Expression expr) {
+        def method = context.enclosingMethod
+        boolean wasDynamic = method?.getNodeMetaData(StaticTypesMarker.DYNAMIC_RESOLUTION)
+        MethodNode result
+        if (expr instanceof MethodCall) {
+            result = makeDynamic((MethodCall)expr)
+        } else if (expr instanceof PropertyExpression) {
+            makeDynamic((PropertyExpression)expr)
+        } else {
+            makeDynamic((VariableExpression)expr)
+        }
+        if (method != null && !wasDynamic) {
+            method.removeNodeMetaData(StaticTypesMarker.DYNAMIC_RESOLUTION)
+        }
+        return result
+    }
+
+    private static boolean isDynamic(ClassNode type) {
+        type == ClassHelper.OBJECT_TYPE || type.isDerivedFrom(GPATH_RESULT)
+    }
+}
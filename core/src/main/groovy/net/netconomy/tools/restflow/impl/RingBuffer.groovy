@@ -0,0 +1,117 @@
+package net.netconomy.tools.restflow.impl
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A lock-free bounded queue for multiple producers and consumers (D.
+ * Vyukov's array queue). Each slot carries a sequence number telling
+ * whether it's ready to be written or read in the current round, so
+ * producers and consumers only contend on their own counter.
+ */
+final class RingBuffer<T> {
+
+    private final int mask
+    private final AtomicReferenceArray<T> elements
+    private final AtomicLongArray sequences
+    private final AtomicLong head = new AtomicLong()
+    private final AtomicLong tail = new AtomicLong()
+
+    /**
+     * @param capacity The capacity, will be rounded up to the next power of
+     * two.
+     */
+    RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: $capacity")
+        }
+        int size = Integer.highestOneBit(capacity)
+        if (size < capacity) {
+            size <<= 1
+        }
+        mask = size - 1
+        elements = new AtomicReferenceArray<>(size)
+        sequences = new AtomicLongArray(size)
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i)
+        }
+    }
+
+    int getCapacity() {
+        mask + 1
+    }
+
+    /**
+     * The approximate number of elements in the buffer.
+     */
+    int size() {
+        (int)Math.max(0, Math.min(tail.get() - head.get(), capacity))
+    }
+
+    /**
+     * Add an element if there's space left.
+     *
+     * @return {@code false} if the buffer is full.
+     */
+    boolean offer(T element) {
+        long pos = tail.get()
+        while (true) {
+            int index = (int)(pos & mask)
+            long diff = sequences.get(index) - pos
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.set(index, element)
+                    sequences.set(index, pos + 1)
+                    return true
+                }
+                pos = tail.get()
+            } else if (diff < 0) {
+                return false
+            } else {
+                pos = tail.get()
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element.
+     *
+     * @return The element or {@code null} if the buffer is empty.
+     */
+    T poll() {
+        long pos = head.get()
+        while (true) {
+            int index = (int)(pos & mask)
+            long diff = sequences.get(index) - (pos + 1)
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    T element = elements.get(index)
+                    elements.set(index, null)
+                    sequences.set(index, pos + mask + 1)
+                    return element
+                }
+                pos = head.get()
+            } else if (diff < 0) {
+                return null
+            } else {
+                pos = head.get()
+            }
+        }
+    }
+
+    /**
+     * Remove up to {@code max} elements and add them to the collection.
+     *
+     * @return The number of elements removed.
+     */
+    int drainTo(Collection<? super T> target, int max) {
+        int count = 0
+        T element
+        while (count < max && (element = poll()) != null) {
+            target.add(element)
+            count++
+        }
+        return count
+    }
+}
@@ -0,0 +1,220 @@
+package net.netconomy.tools.restflow.impl
+
+import org.codehaus.groovy.control.CompilationUnit
+import org.codehaus.groovy.control.CompilerConfiguration
+import org.codehaus.groovy.control.Phases
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.FileAlreadyExistsException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/**
+ * A disk cache for compiled scripts. The generated classes are stored in
+ * a directory per script, keyed by a hash of the source, the Groovy and
+ * RESTflow versions and the compiler configuration (script base class,
+ * target bytecode, customizers including the parameters of AST
+ * transformations, e.g. type checking extensions). On a hit, the classes
+ * are loaded without invoking the compiler.
+ *
+ * <p>The cache is disabled by default. Set the system property {@value
+ * #SCRIPT_CACHE_PROPERTY} to {@code true} to use the {@link
+ * #defaultDirectory() default directory} or to the path of a directory.
+ */
+final class ScriptCache {
+
+    static final String SCRIPT_CACHE_PROPERTY = 'restflow.scriptCache'
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptCache)
+
+    /**
+     * Change this if the layout of the cache changes.
+     */
+    private static final String FORMAT = '1'
+    private static final String MAIN_CLASS_FILE = 'main'
+    private static final String CLASS_EXT = '.class'
+
+    /**
+     * Identifies the RESTflow build the scripts are linked against.
+     */
+    private static final String RESTFLOW_VERSION = restFlowVersion()
+
+    private static volatile ScriptCache global = fromSystemProperty()
+
+    final Path directory
+
+    ScriptCache(Path directory) {
+        this.directory = directory
+    }
+
+    /**
+     * The cache used by {@link RestFlowScripts} or {@code null} if
+     * disabled.
+     */
+    static ScriptCache getGlobal() {
+        return global
+    }
+
+    static void setGlobal(ScriptCache cache) {
+        global = cache
+    }
+
+    /**
+     * {@code $XDG_CACHE_HOME/restflow}, defaults to {@code
+     * ~/.cache/restflow}.
+     */
+    static Path defaultDirectory() {
+        def xdg = System.getenv('XDG_CACHE_HOME')
+        (xdg ? Paths.get(xdg) : Paths.get(System.getProperty('user.home'), '.cache')).resolve('restflow')
+    }
+
+    private static ScriptCache fromSystemProperty() {
+        def value = System.getProperty(SCRIPT_CACHE_PROPERTY)
+        if (!value || value == 'false') {
+            return null
+        }
+        new ScriptCache(value == 'true' ? defaultDirectory() : Paths.get(value))
+    }
+
+    /**
+     * Load the script class from the cache, compile and store it on a
+     * miss.
+     *
+     * @param parent The class loader to load the script classes with,
+     *               usually the shell's class loader.
+     */
+    Class<? extends Script> scriptClass(GroovyCodeSource source, CompilerConfiguration config,
+                                        GroovyClassLoader parent) {
+        def text = source.scriptText
+        def entry = directory.resolve(key(source.name, text, config))
+        if (Files.isDirectory(entry)) {
+            try {
+                return load(entry, parent)
+            } catch (IOException | LinkageError e) {
+                LOG.warn('Ignoring broken script cache entry {}: {}', entry, e.toString())
+            }
+        }
+        def unit = new CompilationUnit(config, source.codeSource, parent)
+        unit.addSource(source.name, text)
+        unit.compile(Phases.CLASS_GENERATION)
+        def mainClass = unit.firstClassNode.name
+        Map<String, byte[]> classes = unit.classes.collectEntries {[it.name, it.bytes]}
+        try {
+            store(entry, mainClass, classes)
+        } catch (IOException e) {
+            LOG.warn('Cannot write script cache entry {}: {}', entry, e.toString())
+        }
+        return new BytecodeClassLoader(parent, classes).loadClass(mainClass) as Class<? extends Script>
+    }
+
+    private static Class<? extends Script> load(Path entry, GroovyClassLoader parent) {
+        def mainClass = new String(Files.readAllBytes(entry.resolve(MAIN_CLASS_FILE)), StandardCharsets.UTF_8)
+        Map<String, byte[]> classes = [:]
+        Files.newDirectoryStream(entry, "*$CLASS_EXT").withCloseable {stream ->
+            for (f in stream) {
+                def name = f.fileName.toString()
+                classes.put(name.substring(0, name.length() - CLASS_EXT.length()), Files.readAllBytes(f))
+            }
+        }
+        if (!classes.containsKey(mainClass)) {
+            throw new IOException("Main class $mainClass missing")
+        }
+        return new BytecodeClassLoader(parent, classes).loadClass(mainClass) as Class<? extends Script>
+    }
+
+    /**
+     * Write the entry to a temporary directory and move it into place, so
+     * concurrent processes never see incomplete entries.
+     */
+    private void store(Path entry, String mainClass, Map<String, byte[]> classes) {
+        Files.createDirectories(directory)
+        def tmp = Files.createTempDirectory(directory, entry.fileName.toString() + '.')
+        try {
+            Files.write(tmp.resolve(MAIN_CLASS_FILE), mainClass.getBytes(StandardCharsets.UTF_8))
+            classes.each {name, bytes ->
+                Files.write(tmp.resolve(name + CLASS_EXT), bytes)
+            }
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE)
+            } catch (AtomicMoveNotSupportedException ignored) {
+                Files.move(tmp, entry)
+            }
+            tmp = null
+        } catch (FileAlreadyExistsException ignored) {
+            // stored by another process in the meantime
+        } finally {
+            if (tmp != null) {
+                tmp.toFile().deleteDir()
+            }
+        }
+    }
+
+    private static String key(String name, String text, CompilerConfiguration config) {
+        def digest = MessageDigest.getInstance('SHA-256')
+        def update = {String s -> digest.update(s.getBytes(StandardCharsets.UTF_8)); digest.update((byte)0)}
+        update(FORMAT)
+        update(GroovySystem.version)
+        update(RESTFLOW_VERSION)
+        update(config.scriptBaseClass ?: '')
+        update(config.targetBytecode ?: '')
+        config.compilationCustomizers.each {c ->
+            if (c instanceof ASTTransformationCustomizer) {
+                update(c.transformation.getClass().name)
+                // there's no getter, the parameters are in the annotation node
+                c.@annotationNode?.members?.each {k, v -> update("$k=${v.text}")}
+            } else {
+                update(c.getClass().name)
+            }
+        }
+        // the class name is derived from the name
+        update(name)
+        update(text)
+        digest.digest().encodeHex().toString()
+    }
+
+    /**
+     * The implementation version, location and time stamp of the RESTflow
+     * classes, the time stamp also covers development builds without a
+     * version.
+     */
+    private static String restFlowVersion() {
+        def url = ScriptCache.getResource(ScriptCache.simpleName + '.class')
+        long modified = 0
+        try {
+            def connection = url.openConnection()
+            modified = connection.lastModified
+            connection.getInputStream().close()
+        } catch (IOException ignored) {
+        }
+        "${ScriptCache.package?.implementationVersion}:$url:$modified"
+    }
+
+    /**
+     * Defines the classes of one script from their bytecode.
+     */
+    private static final class BytecodeClassLoader extends ClassLoader {
+
+        private final Map<String, byte[]> bytecode
+
+        BytecodeClassLoader(ClassLoader parent, Map<String, byte[]> bytecode) {
+            super(parent)
+            this.bytecode = bytecode
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = bytecode.get(name)
+            if (bytes == null) {
+                throw new ClassNotFoundException(name)
+            }
+            return super.defineClass(name, bytes, 0, bytes.length)
+        }
+    }
+}
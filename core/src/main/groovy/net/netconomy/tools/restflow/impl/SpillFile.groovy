@@ -0,0 +1,67 @@
+package net.netconomy.tools.restflow.impl
+
+import java.lang.ref.Cleaner
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Temporary files for response bodies that are too large to be kept in
+ * memory. The files are deleted when their owner becomes unreachable, the
+ * remaining files are deleted on shutdown.
+ */
+final class SpillFile {
+
+    private static final Cleaner CLEANER = Cleaner.create()
+    private static final Set<Path> FILES = ConcurrentHashMap.newKeySet()
+
+    static {
+        Runtime.runtime.addShutdownHook(new Thread({
+            FILES.each {delete(it)}
+        } as Runnable, 'restflow-spill-cleanup'))
+    }
+
+    private SpillFile() {
+    }
+
+    /**
+     * Create a new temporary file.
+     */
+    static Path create() {
+        def file = Files.createTempFile('restflow-', '.body')
+        FILES.add(file)
+        return file
+    }
+
+    /**
+     * Delete the file as soon as the owner becomes unreachable.
+     */
+    static void deleteWhenUnreachable(Object owner, Path file) {
+        CLEANER.register(owner, new Deleter(file))
+    }
+
+    /**
+     * Delete the file immediately.
+     */
+    static void delete(Path file) {
+        FILES.remove(file)
+        try {
+            Files.deleteIfExists(file)
+        } catch (IOException ignored) {
+            // it's a temp file, nothing we can do about it
+        }
+    }
+
+    private static final class Deleter implements Runnable {
+        private final Path file
+
+        Deleter(Path file) {
+            this.file = file
+        }
+
+        @Override
+        void run() {
+            delete(file)
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.netconomy.tools.restflow.impl
+
+import net.netconomy.tools.restflow.dsl.RestFlow
+
+/**
+ * The base class for statically compiled scripts. The methods and
+ * properties of {@link RestFlow} are delegated at compile time, so the
+ * static type checker can resolve them and the DSL calls don't go
+ * through dynamic dispatch. The {@link RestDsl} annotations of the
+ * closure parameters are copied, closures passed to e.g. {@code GET} or
+ * {@code request} are type checked against their delegate.
+ *
+ * @see RestFlowScripts#newCompilerConfiguration(boolean, boolean)
+ */
+abstract class StaticRestFlowScript extends RestFlowScript {
+
+    @Delegate(parameterAnnotations = true, methodAnnotations = true,
+              excludes = ['propertyMissing'])
+    private RestFlow restFlow
+
+    StaticRestFlowScript() {
+        super()
+    }
+
+    @Override
+    void setContext(RestFlowScripts.Context context) {
+        super.setContext(context)
+        restFlow = context.restFlow
+    }
+}
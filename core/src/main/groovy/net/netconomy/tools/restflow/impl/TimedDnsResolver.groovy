@@ -0,0 +1,27 @@
+package net.netconomy.tools.restflow.impl
+
+import org.apache.http.conn.DnsResolver
+import org.apache.http.impl.conn.SystemDefaultDnsResolver
+
+/**
+ * Resolves host names using the system resolver and records the time in
+ * the current {@link ExchangeMetrics}.
+ */
+final class TimedDnsResolver implements DnsResolver {
+
+    static final TimedDnsResolver INSTANCE = new TimedDnsResolver()
+
+    private TimedDnsResolver() {
+    }
+
+    @Override
+    InetAddress[] resolve(String host) throws UnknownHostException {
+        def metrics = ExchangeMetrics.current()
+        long start = System.nanoTime()
+        try {
+            return SystemDefaultDnsResolver.INSTANCE.resolve(host)
+        } finally {
+            metrics?.record(ExchangeMetrics.Phase.DNS, start)
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package net.netconomy.tools.restflow.impl
+
+import org.apache.http.HttpClientConnection
+import org.apache.http.HttpException
+import org.apache.http.HttpRequest
+import org.apache.http.HttpResponse
+import org.apache.http.protocol.HttpContext
+import org.apache.http.protocol.HttpRequestExecutor
+
+/**
+ * Records the time to send the request and to wait for the response
+ * headers in the current {@link ExchangeMetrics}, as well as the bytes
+ * sent and whether the connection has been used before.
+ */
+class TimedRequestExecutor extends HttpRequestExecutor {
+
+    @Override
+    protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context)
+            throws IOException, HttpException {
+        def metrics = ExchangeMetrics.current()
+        if (metrics == null) {
+            return super.doSendRequest(request, conn, context)
+        }
+        def connMetrics = conn.metrics
+        metrics.connectionReused = connMetrics.requestCount > 0
+        long sent = connMetrics.sentBytesCount
+        long start = System.nanoTime()
+        try {
+            return super.doSendRequest(request, conn, context)
+        } finally {
+            metrics.record(ExchangeMetrics.Phase.SEND, start)
+            metrics.addBytesSent(connMetrics.sentBytesCount - sent)
+        }
+    }
+
+    @Override
+    protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context)
+            throws HttpException, IOException {
+        def metrics = ExchangeMetrics.current()
+        long start = System.nanoTime()
+        try {
+            return super.doReceiveResponse(request, conn, context)
+        } finally {
+            metrics?.record(ExchangeMetrics.Phase.WAIT, start)
+        }
+    }
+}
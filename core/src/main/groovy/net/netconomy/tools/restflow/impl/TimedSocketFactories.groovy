@@ -0,0 +1,75 @@
+package net.netconomy.tools.restflow.impl
+
+import org.apache.http.HttpHost
+import org.apache.http.conn.socket.PlainConnectionSocketFactory
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory
+import org.apache.http.protocol.HttpContext
+
+import javax.net.ssl.HostnameVerifier
+import javax.net.ssl.SSLContext
+
+import static net.netconomy.tools.restflow.impl.ExchangeMetrics.Phase.CONNECT
+import static net.netconomy.tools.restflow.impl.ExchangeMetrics.Phase.SSL
+
+/**
+ * Socket factories recording the connect and TLS handshake times in the
+ * current {@link ExchangeMetrics}.
+ */
+final class TimedSocketFactories {
+
+    private TimedSocketFactories() {
+    }
+
+    static class Plain extends PlainConnectionSocketFactory {
+
+        @Override
+        Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                             InetSocketAddress localAddress, HttpContext context) throws IOException {
+            def metrics = ExchangeMetrics.current()
+            long start = System.nanoTime()
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context)
+            } finally {
+                metrics?.record(CONNECT, start)
+            }
+        }
+    }
+
+    /**
+     * The TLS handshake happens within {@code connectSocket()}, its time
+     * will be subtracted from the connect time.
+     */
+    static class Ssl extends SSLConnectionSocketFactory {
+
+        Ssl(SSLContext sslContext, HostnameVerifier hostnameVerifier) {
+            super(sslContext, hostnameVerifier)
+        }
+
+        @Override
+        Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                             InetSocketAddress localAddress, HttpContext context) throws IOException {
+            def metrics = ExchangeMetrics.current()
+            long sslBefore = Math.max(0L, metrics?.nanos(SSL) ?: 0L)
+            long start = System.nanoTime()
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context)
+            } finally {
+                if (metrics != null) {
+                    long ssl = Math.max(0L, metrics.nanos(SSL)) - sslBefore
+                    metrics.add(CONNECT, System.nanoTime() - start - ssl)
+                }
+            }
+        }
+
+        @Override
+        Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            def metrics = ExchangeMetrics.current()
+            long start = System.nanoTime()
+            try {
+                return super.createLayeredSocket(socket, target, port, context)
+            } finally {
+                metrics?.record(SSL, start)
+            }
+        }
+    }
+}
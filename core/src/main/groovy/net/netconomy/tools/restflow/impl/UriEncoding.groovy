@@ -0,0 +1,85 @@
+package net.netconomy.tools.restflow.impl
+
+import java.nio.charset.Charset
+
+/**
+ * Percent-encoding of URI components directly into a buffer. Only runs of
+ * characters that actually need encoding are converted to bytes.
+ */
+final class UriEncoding {
+
+    private static final char[] HEX = '0123456789ABCDEF'.toCharArray()
+
+    /**
+     * Characters allowed in query components, compatible with {@link
+     * URLEncoder}.
+     */
+    private static final BitSet QUERY_SAFE = chars('abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.-*_')
+    /**
+     * Characters allowed in a path segment (RFC 3986 pchar without '%').
+     */
+    private static final BitSet SEGMENT_SAFE = chars('abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~!$&\'()*+,;=:@')
+    /**
+     * Characters allowed in a literal path: all path characters including
+     * '/' and '%' to keep existing escapes.
+     */
+    private static final BitSet PATH_SAFE = chars('abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~!$&\'()*+,;=:@/%')
+
+    private UriEncoding() {
+    }
+
+    /**
+     * Encode a query parameter name or value like {@code URLEncoder}, i.e.
+     * spaces will be encoded as '+'.
+     */
+    static StringBuilder appendQueryComponent(StringBuilder buf, String str, Charset charset) {
+        append(buf, str, charset, QUERY_SAFE, true)
+    }
+
+    /**
+     * Encode a path segment, this also encodes '/'.
+     */
+    static StringBuilder appendPathSegment(StringBuilder buf, String str, Charset charset) {
+        append(buf, str, charset, SEGMENT_SAFE, false)
+    }
+
+    /**
+     * Encode a literal path: characters that aren't allowed in a path get
+     * encoded, '/' and existing escapes are kept as they are.
+     */
+    static StringBuilder appendPath(StringBuilder buf, String str, Charset charset) {
+        append(buf, str, charset, PATH_SAFE, false)
+    }
+
+    private static StringBuilder append(StringBuilder buf, String str, Charset charset, BitSet safe, boolean plusForSpace) {
+        int len = str.length()
+        int i = 0
+        while (i < len) {
+            char c = str.charAt(i)
+            if (safe.get((int)c)) {
+                buf.append(c)
+                i++
+            } else if (plusForSpace && c == (char)' ') {
+                buf.append((char)'+')
+                i++
+            } else {
+                int start = i
+                while (i < len && !safe.get((int)str.charAt(i)) && !(plusForSpace && str.charAt(i) == (char)' ')) {
+                    i++
+                }
+                for (byte b in str.substring(start, i).getBytes(charset)) {
+                    buf.append((char)'%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf])
+                }
+            }
+        }
+        return buf
+    }
+
+    private static BitSet chars(String chars) {
+        def set = new BitSet(128)
+        for (c in chars.toCharArray()) {
+            set.set((int)c)
+        }
+        return set
+    }
+}
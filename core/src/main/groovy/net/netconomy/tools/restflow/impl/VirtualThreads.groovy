@@ -0,0 +1,120 @@
+package net.netconomy.tools.restflow.impl
+
+import java.lang.invoke.MethodHandle
+import java.lang.invoke.MethodHandles
+import java.lang.invoke.MethodType
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+
+/**
+ * Access to virtual threads (JDK 21+). RESTflow is built for Java 11, the
+ * API is therefore looked up reflectively.
+ */
+final class VirtualThreads {
+
+    static final String VIRTUAL_THREADS_PROPERTY = 'restflow.virtualThreads'
+
+    private static final MethodHandle OF_VIRTUAL
+    private static final MethodHandle NAME
+    private static final MethodHandle FACTORY
+    private static final MethodHandle NEW_THREAD_PER_TASK_EXECUTOR
+
+    static {
+        MethodHandle ofVirtual = null
+        MethodHandle name = null
+        MethodHandle factory = null
+        MethodHandle newExecutor = null
+        try {
+            def lookup = MethodHandles.publicLookup()
+            def builderClass = Class.forName('java.lang.Thread$Builder$OfVirtual')
+            ofVirtual = lookup.findStatic(Thread, 'ofVirtual', MethodType.methodType(builderClass))
+            name = lookup.findVirtual(builderClass, 'name', MethodType.methodType(builderClass, String, long))
+            factory = lookup.findVirtual(builderClass, 'factory', MethodType.methodType(ThreadFactory))
+            newExecutor = lookup.findStatic(Executors, 'newThreadPerTaskExecutor',
+                                            MethodType.methodType(ExecutorService, ThreadFactory))
+        } catch (ReflectiveOperationException ignored) {
+            ofVirtual = null
+        }
+        OF_VIRTUAL = ofVirtual
+        NAME = name
+        FACTORY = factory
+        NEW_THREAD_PER_TASK_EXECUTOR = newExecutor
+    }
+
+    private VirtualThreads() {
+    }
+
+    static boolean isAvailable() {
+        OF_VIRTUAL != null
+    }
+
+    /**
+     * {@code true} if the system property {@value #VIRTUAL_THREADS_PROPERTY}
+     * is set to {@code true} and virtual threads are available.
+     */
+    static boolean isEnabledByDefault() {
+        available && Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)
+    }
+
+    /**
+     * A factory for virtual threads named <code><em>prefix</em>N</code>.
+     */
+    static ThreadFactory threadFactory(String prefix) {
+        checkAvailable()
+        def builder = NAME.invokeWithArguments(OF_VIRTUAL.invokeWithArguments(), prefix, 1L)
+        (ThreadFactory)FACTORY.invokeWithArguments(builder)
+    }
+
+    /**
+     * An executor that starts a new virtual thread for each task.
+     */
+    static ExecutorService newExecutor(String prefix) {
+        (ExecutorService)NEW_THREAD_PER_TASK_EXECUTOR.invokeWithArguments(threadFactory(prefix))
+    }
+
+    /**
+     * Run the task in a new virtual thread and wait for it to complete.
+     * If the calling thread gets interrupted, the virtual thread will be
+     * interrupted, too.
+     *
+     * @return The result of the task.
+     */
+    static <T> T call(String name, Callable<T> task) {
+        def result = null
+        Throwable exception = null
+        def thread = threadFactory(name + '-').newThread({
+            try {
+                result = task.call()
+            } catch (Throwable e) {
+                exception = e
+            }
+        })
+        thread.start()
+        boolean interrupted = false
+        while (true) {
+            try {
+                thread.join()
+                break
+            } catch (InterruptedException ignored) {
+                interrupted = true
+                thread.interrupt()
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt()
+        }
+        if (exception != null) {
+            throw exception
+        }
+        return (T)result
+    }
+
+    static void checkAvailable() {
+        if (!available) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads require Java 21 or later (running ${System.getProperty('java.version')})")
+        }
+    }
+}
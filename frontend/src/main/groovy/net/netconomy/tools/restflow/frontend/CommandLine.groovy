@@ -1,5 +1,9 @@
 package net.netconomy.tools.restflow.frontend
 
+import net.netconomy.tools.restflow.impl.AsyncCommLog
+import net.netconomy.tools.restflow.impl.RestFlowScripts
+import net.netconomy.tools.restflow.impl.ScriptCache
+
 import javax.swing.UIManager
 import java.nio.file.Path
 import java.nio.file.Paths
@@ -8,12 +12,23 @@ import java.util.regex.Pattern
 class CommandLine {
 
     final Closure<?> exit
+    /**
+     * Receives the usage and the errors in the arguments.
+     */
+    final PrintStream err
 
     List<Path> profilePaths = []
     List<String> files = []
+    boolean virtualThreads = false
+    AsyncCommLog.Overflow asyncLog = null
+    Path harFile = null
+    boolean harBodies = false
+    boolean jfr = false
+    int parallel = 1
 
-    CommandLine(Closure<?> exit = {System.exit(it as int)}) {
+    CommandLine(Closure<?> exit = {System.exit(it as int)}, PrintStream err = System.err) {
         this.exit = exit
+        this.err = err
     }
 
     static void setupSwing() {
@@ -23,9 +38,67 @@ class CommandLine {
         UIManager.put('swing.boldMetal', Boolean.FALSE)
     }
 
-    private void usage() {
-        System.err.println 'Options:'
-        System.err.println " -profiles <profiles>   Paths to search for profiles spearated by $File.pathSeparator"
+    protected void usage() {
+        err.println 'Options:'
+        err.println " -profiles <profiles>   Paths to search for profiles spearated by $File.pathSeparator"
+        err.println ' -virtual-threads       Run scripts and requests on virtual threads (Java 21+)'
+        err.println ' -async-log <overflow>  Write the log in a background thread, if the buffer is full:'
+        err.println '                        block, drop-oldest or sample'
+        err.println ' -har <file>            Write all HTTP exchanges to a HAR file'
+        err.println ' -har-bodies            Include the bodies in the HAR file'
+        err.println ' -jfr                   Emit a Flight Recorder event for each HTTP exchange'
+        err.println ' -parallel <n>          Run up to n script files concurrently, each in its own flow'
+        err.println ' -script-cache          Cache compiled scripts on disk, the directory can be set using'
+        err.println "                        the system property $ScriptCache.SCRIPT_CACHE_PROPERTY"
+        err.println ' -compile-static        Compile scripts and profiles statically (also system property'
+        err.println "                        $RestFlowScripts.COMPILE_STATIC_PROPERTY)"
+    }
+
+    /**
+     * Hook for additional options. Implementations remove the option and
+     * its arguments from the list and return {@code true}, if the option is
+     * known.
+     */
+    protected boolean readOption(List<String> args) {
+        false
+    }
+
+    /**
+     * Remove the option and return its argument. Exits if the argument is
+     * missing.
+     */
+    protected String optionArgument(List<String> args) {
+        args.remove(0)
+        if (!args) {
+            usage()
+            exit(1)
+        }
+        args.remove(0)
+    }
+
+    /**
+     * Remove the option and return its argument as a number of the given
+     * type. Exits if the argument is missing or not a number.
+     */
+    protected <N extends Number> N numberArgument(List<String> args, Class<N> type) {
+        def arg = optionArgument(args)
+        try {
+            return arg.asType(type)
+        } catch (NumberFormatException ignored) {
+            err.println "Invalid number: $arg"
+            usage()
+            exit(1)
+            return 1.asType(type)
+        }
+    }
+
+    protected <N extends Number> N positive(N value) {
+        if (value <= 0) {
+            err.println "Positive number expected: $value"
+            usage()
+            exit(1)
+        }
+        value
     }
 
     CommandLine readArgs(String[] args) {
@@ -37,21 +110,55 @@ class CommandLine {
         while (args) {
             switch (args.first()) {
             case '-profiles':
+                profilePaths.addAll(optionArgument(args).split(Pattern.quote(File.pathSeparator)).collect {Paths.get(it)})
+                break
+            case '-virtual-threads':
                 args.remove(0)
-                if (!args) {
+                virtualThreads = true
+                break
+            case '-async-log':
+                def overflow = optionArgument(args)
+                try {
+                    asyncLog = AsyncCommLog.Overflow.valueOf(overflow.toUpperCase().replace('-', '_'))
+                } catch (IllegalArgumentException ignored) {
+                    err.println "Invalid overflow policy: $overflow"
                     usage()
                     exit(1)
                 }
-                profilePaths.addAll(args.first().split(Pattern.quote(File.pathSeparator)).collect {Paths.get(it)})
+                break
+            case '-har':
+                harFile = Paths.get(optionArgument(args))
+                break
+            case '-har-bodies':
                 args.remove(0)
+                harBodies = true
+                break
+            case '-jfr':
+                args.remove(0)
+                jfr = true
+                break
+            case '-parallel':
+                parallel = positive(numberArgument(args, Integer))
+                break
+            case '-script-cache':
+                args.remove(0)
+                if (ScriptCache.global == null) {
+                    ScriptCache.global = new ScriptCache(ScriptCache.defaultDirectory())
+                }
+                break
+            case '-compile-static':
+                args.remove(0)
+                RestFlowScripts.compileStatic = true
                 break
             case '-help':
                 usage()
                 exit(0)
                 break
             default:
-                files.add args.first()
-                args.remove(0)
+                if (!readOption(args)) {
+                    files.add args.first()
+                    args.remove(0)
+                }
             }
         }
         this
@@ -0,0 +1,104 @@
+package net.netconomy.tools.restflow.frontend
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram. Values are
+ * recorded in microseconds into log-linear buckets: values below 128 are
+ * exact, larger values are recorded with a relative error of at most 1/64
+ * (about 1.6%). Values above ~25 days are clamped.
+ *
+ * <p>Concurrent recording is safe, the statistics are not an atomic
+ * snapshot while values are being recorded.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_HALF_BITS
+    private static final int MAX_MAGNITUDE = 40
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_HALF_BITS) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT)
+    private final LongAdder count = new LongAdder()
+    private final LongAdder sum = new LongAdder()
+    private final AtomicLong max = new AtomicLong()
+
+    void record(long micros) {
+        if (micros < 0) {
+            micros = 0
+        } else if (micros > MAX_VALUE) {
+            micros = MAX_VALUE
+        }
+        counts.incrementAndGet(indexOf(micros))
+        count.increment()
+        sum.add(micros)
+        max.accumulateAndGet(micros, {long a, long b -> Math.max(a, b)})
+    }
+
+    void add(LatencyHistogram that) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = that.counts.get(i)
+            if (c) {
+                counts.addAndGet(i, c)
+            }
+        }
+        count.add(that.count.sum())
+        sum.add(that.sum.sum())
+        max.accumulateAndGet(that.max.get(), {long a, long b -> Math.max(a, b)})
+    }
+
+    long getCount() {
+        count.sum()
+    }
+
+    long getMax() {
+        max.get()
+    }
+
+    double getMean() {
+        long c = count.sum()
+        c ? sum.sum() / (double)c : 0
+    }
+
+    /**
+     * The value at the given percentile (0..100), i.e. the highest value
+     * equivalent to the bucket containing the percentile.
+     */
+    long percentile(double percentile) {
+        long total = count.sum()
+        if (total == 0) {
+            return 0
+        }
+        long target = Math.max(1L, Math.ceil(total * Math.min(percentile, 100d) / 100d) as long)
+        long seen = 0
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i)
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get())
+            }
+        }
+        return max.get()
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_BITS
+        return (shift * SUB_BUCKET_HALF) + (int)(value >>> shift)
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index
+        }
+        int shift = index.intdiv(SUB_BUCKET_HALF) - 1
+        long sub = (index % SUB_BUCKET_HALF) + SUB_BUCKET_HALF
+        return ((sub + 1) << shift) - 1
+    }
+}
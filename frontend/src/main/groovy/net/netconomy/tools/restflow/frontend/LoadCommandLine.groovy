@@ -0,0 +1,91 @@
+package net.netconomy.tools.restflow.frontend
+
+import java.time.Duration
+import java.util.regex.Pattern
+
+/**
+ * Command line of {@link RestFlowLoad}.
+ */
+class LoadCommandLine extends CommandLine {
+
+    private static final Pattern DURATION_RE = ~/(\d+(?:\.\d+)?)(ms|s|m|h)?/
+
+    int workers = 1
+    /**
+     * Total number of iterations, 0 if limited by duration only.
+     */
+    long iterations = 0
+    Duration duration = null
+    Duration rampUp = Duration.ZERO
+    /**
+     * Target iterations per second, 0 for unpaced.
+     */
+    double rps = 0
+    Duration reportInterval = Duration.ofSeconds(10)
+
+    LoadCommandLine(Closure<?> exit = {System.exit(it as int)}, PrintStream err = System.err) {
+        super(exit, err)
+    }
+
+    @Override
+    protected void usage() {
+        err.println 'Usage: RestFlowLoad [options] <script>...'
+        super.usage()
+        err.println ' -workers <n>           Number of concurrent workers (default: 1)'
+        err.println ' -iterations <n>        Total number of script runs (default: one per worker)'
+        err.println ' -duration <time>       Stop after the given time, e.g. 30s, 5m'
+        err.println ' -ramp-up <time>        Start workers (or the target rate) gradually'
+        err.println ' -rps <n>               Target script runs per second over all workers'
+        err.println ' -report <time>         Interval for progress reports, 0 to disable (default: 10s)'
+    }
+
+    @Override
+    protected boolean readOption(List<String> args) {
+        switch (args.first()) {
+        case '-workers':
+            workers = positive(numberArgument(args, Integer))
+            return true
+        case '-iterations':
+            iterations = positive(numberArgument(args, Long))
+            return true
+        case '-duration':
+            duration = parseDuration(optionArgument(args))
+            return true
+        case '-ramp-up':
+            rampUp = parseDuration(optionArgument(args))
+            return true
+        case '-rps':
+            rps = positive(numberArgument(args, Double))
+            return true
+        case '-report':
+            reportInterval = parseDuration(optionArgument(args))
+            return true
+        default:
+            return false
+        }
+    }
+
+    /**
+     * The number of iterations to run: the given number or one per worker,
+     * if neither iterations nor duration are specified. 0 means unlimited.
+     */
+    long getEffectiveIterations() {
+        iterations ?: (duration == null ? workers : 0)
+    }
+
+    /**
+     * Parse a duration: a number with one of the units ms, s, m or h.
+     * Seconds are assumed if no unit is given.
+     */
+    Duration parseDuration(String str) {
+        def m = DURATION_RE.matcher(str.trim())
+        if (!m.matches()) {
+            err.println "Invalid duration: $str"
+            usage()
+            exit(1)
+            return Duration.ZERO
+        }
+        double millis = (m.group(1) as double) * [ms: 1, s: 1000, m: 60_000, h: 3600_000][m.group(2) ?: 's']
+        Duration.ofMillis(Math.round(millis))
+    }
+}
@@ -0,0 +1,114 @@
+package net.netconomy.tools.restflow.frontend
+
+import net.netconomy.tools.restflow.impl.RequestEvent
+import net.netconomy.tools.restflow.impl.RequestListener
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Latency and error statistics of a load run, collected per request label
+ * (see {@link RequestEvent#getLabel()}), for all requests and for whole
+ * script iterations. Each series keeps the totals and the values since the
+ * last progress report.
+ */
+class LoadStatistics {
+
+    static final String ALL_REQUESTS = '<all requests>'
+    static final String ITERATIONS = '<iterations>'
+
+    private static final int MAX_ERROR_MESSAGES = 20
+
+    private final ConcurrentMap<String, Series> requests = new ConcurrentHashMap<>()
+    final Series allRequests = new Series(ALL_REQUESTS)
+    final Series iterations = new Series(ITERATIONS)
+
+    private final ConcurrentMap<String, LongAdder> errorMessages = new ConcurrentHashMap<>()
+
+    Series request(String label) {
+        requests.computeIfAbsent(label, {new Series(it)})
+    }
+
+    List<Series> getRequests() {
+        requests.values().sort {it.label}
+    }
+
+    /**
+     * Count an error message, the first {@value #MAX_ERROR_MESSAGES}
+     * distinct messages are kept.
+     */
+    void error(Throwable error) {
+        def msg = error.toString()
+        def counter = errorMessages.get(msg)
+        if (counter == null && errorMessages.size() < MAX_ERROR_MESSAGES) {
+            counter = errorMessages.computeIfAbsent(msg, {new LongAdder()})
+        }
+        counter?.increment()
+    }
+
+    Map<String, Long> getErrorMessages() {
+        errorMessages.collectEntries {k, v -> [k, v.sum()]}
+    }
+
+    /**
+     * Create a listener for one worker. The listener adds the worker's
+     * current lag behind the schedule to each latency to correct the
+     * coordinated omission.
+     */
+    Recorder recorder() {
+        new Recorder()
+    }
+
+    class Recorder implements RequestListener {
+
+        volatile long lagNanos = 0
+
+        @Override
+        void requestCompleted(RequestEvent event) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(event.durationNanos + lagNanos)
+            boolean failed = event.failed
+            request(event.label).record(micros, failed)
+            allRequests.record(micros, failed)
+            if (event.error) {
+                error(event.error)
+            }
+        }
+    }
+
+    static class Series {
+
+        final String label
+        final LatencyHistogram total = new LatencyHistogram()
+        final LongAdder errors = new LongAdder()
+        private final AtomicReference<Interval> interval = new AtomicReference<>(new Interval())
+
+        Series(String label) {
+            this.label = label
+        }
+
+        void record(long micros, boolean failed) {
+            total.record(micros)
+            def i = interval.get()
+            i.histogram.record(micros)
+            if (failed) {
+                errors.increment()
+                i.errors.increment()
+            }
+        }
+
+        /**
+         * Get the values since the last call and start a new interval.
+         */
+        Interval nextInterval() {
+            interval.getAndSet(new Interval())
+        }
+    }
+
+    static class Interval {
+        final LatencyHistogram histogram = new LatencyHistogram()
+        final LongAdder errors = new LongAdder()
+    }
+}
@@ -0,0 +1,158 @@
+package net.netconomy.tools.restflow.frontend
+
+import net.netconomy.tools.restflow.dsl.RestFlow
+import net.netconomy.tools.restflow.impl.PrintCommLog
+import net.netconomy.tools.restflow.impl.RestFlowScript
+import net.netconomy.tools.restflow.impl.RestFlowScripts
+import net.netconomy.tools.restflow.impl.RestFlowScripts.ReadOnlyBinding
+import net.netconomy.tools.restflow.impl.VirtualThreads
+import org.codehaus.groovy.runtime.StackTraceUtils
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Paths
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.Lock
+import java.util.concurrent.locks.ReentrantLock
+
+/**
+ * Runs independent script files concurrently. Each script runs in its own
+ * {@link RestFlow#isolate(net.netconomy.tools.restflow.impl.CommLog)
+ * isolated} flow, i.e. the scripts share the profiles and the connection
+ * pool, but not the cookies, base requests or {@code ext}.
+ *
+ * <p>The log and the {@code println} output of each script are buffered
+ * and printed as a block when the script completes, followed by a summary
+ * of all scripts.
+ *
+ * <p>If the flow uses virtual threads, the scripts run on virtual threads
+ * too, still at most {@code parallel} at a time.
+ */
+class ParallelRunner {
+
+    private final RestFlow restFlow
+    private final GroovyShell shell
+    private final int parallel
+    private final PrintStream out
+    private final Lock outLock = new ReentrantLock()
+
+    ParallelRunner(RestFlow restFlow, GroovyShell shell, int parallel, PrintStream out = System.out) {
+        this.restFlow = restFlow
+        this.shell = shell
+        this.parallel = parallel
+        this.out = out
+    }
+
+    /**
+     * Run the scripts and print the summary.
+     *
+     * @return {@code true}, if all scripts succeeded.
+     */
+    boolean run(List<String> files) {
+        // compile up front in this thread, the shell isn't meant to be used concurrently
+        List<ScriptRun> runs = files.collect {f ->
+            def run = new ScriptRun(file: f)
+            try {
+                run.script = RestFlowScripts.parseScript(shell, new GroovyCodeSource(Paths.get(f).toUri())) as RestFlowScript
+            } catch (Exception e) {
+                run.error = e
+                run.output = e.toString() + '\n'
+                print(run)
+            }
+            run
+        }
+        Queue<ScriptRun> pending = new ConcurrentLinkedQueue<>(runs.findAll {it.script != null})
+        ExecutorService executor
+        if (restFlow.virtualThreads) {
+            executor = VirtualThreads.newExecutor('restflow-script-')
+        } else {
+            def count = new AtomicInteger()
+            executor = Executors.newFixedThreadPool(parallel, {Runnable r ->
+                def t = new Thread(r, "restflow-script-${count.incrementAndGet()}")
+                t.daemon = true
+                t
+            } as ThreadFactory)
+        }
+        long start = System.nanoTime()
+        try {
+            // parallel workers taking the scripts from the queue, this also limits virtual threads
+            List<Future<?>> futures = (0..<Math.min(parallel, pending.size())).collect {
+                executor.submit({
+                    ScriptRun run
+                    while ((run = pending.poll()) != null) {
+                        execute(run)
+                    }
+                } as Runnable)
+            }
+            futures.each {it.get()}
+        } finally {
+            executor.shutdownNow()
+        }
+        summary(runs, System.nanoTime() - start)
+        return !runs.any {it.error != null}
+    }
+
+    private void execute(ScriptRun run) {
+        def buffer = new ByteArrayOutputStream()
+        def scriptOut = new PrintStream(buffer, true, StandardCharsets.UTF_8.name())
+        long start = System.nanoTime()
+        try {
+            restFlow.isolate(new PrintCommLog(out: scriptOut)).withCloseable {RestFlow flow ->
+                RestFlowScripts.run(RestFlowScripts.init(shell, run.script, new ReadOnlyBinding(out: scriptOut), flow))
+            }
+        } catch (Throwable e) {
+            if (e instanceof VirtualMachineError) {
+                throw e
+            }
+            run.error = e
+            StackTraceUtils.deepSanitize(e).printStackTrace(scriptOut)
+        } finally {
+            run.nanos = System.nanoTime() - start
+            scriptOut.flush()
+            run.output = buffer.toString(StandardCharsets.UTF_8.name())
+        }
+        print(run)
+    }
+
+    private void print(ScriptRun run) {
+        outLock.lock()
+        try {
+            out.println "=== $run.file (${run.error == null ? 'passed' : 'FAILED'}, ${millis(run.nanos)} ms)"
+            out.print run.output
+            out.flush()
+        } finally {
+            outLock.unlock()
+        }
+    }
+
+    private void summary(List<ScriptRun> runs, long nanos) {
+        def failed = runs.findAll {it.error != null}
+        outLock.lock()
+        try {
+            out.println "=== ${runs.size()} scripts, ${runs.size() - failed.size()} passed, ${failed.size()} failed " +
+                        "(${millis(nanos)} ms)"
+            failed.each {
+                out.println "FAILED $it.file: ${it.error.toString().readLines().first()}"
+            }
+            out.flush()
+        } finally {
+            outLock.unlock()
+        }
+    }
+
+    private static long millis(long nanos) {
+        nanos.intdiv(1_000_000L)
+    }
+
+    private static final class ScriptRun {
+        String file
+        RestFlowScript script
+        volatile Throwable error
+        volatile long nanos
+        volatile String output
+    }
+}
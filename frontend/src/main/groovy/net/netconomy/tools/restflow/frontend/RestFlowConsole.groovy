@@ -2,6 +2,7 @@ package net.netconomy.tools.restflow.frontend
 
 import groovy.console.ui.Console
 import net.netconomy.tools.restflow.dsl.RestFlow
+import net.netconomy.tools.restflow.impl.HttpTransports
 import net.netconomy.tools.restflow.impl.ProfileLoader
 import net.netconomy.tools.restflow.impl.RestFlowScripts
 import org.codehaus.groovy.control.CompilationFailedException
@@ -89,6 +90,7 @@ class RestFlowConsole {
 
     static void main(String[] args) {
         CommandLine.setupSwing()
+        HttpTransports.disableJdkHostnameVerification()
         def cmdLine = new CommandLine().readArgs(args)
         profilePaths.addAll cmdLine.profilePaths
         def console = new RestFlowConsole(RestFlowConsole.getClassLoader())
@@ -0,0 +1,248 @@
+package net.netconomy.tools.restflow.frontend
+
+import net.netconomy.tools.restflow.dsl.RestFlow
+import net.netconomy.tools.restflow.impl.HarWriter
+import net.netconomy.tools.restflow.impl.HttpTransports
+import net.netconomy.tools.restflow.impl.JfrRequestListener
+import net.netconomy.tools.restflow.impl.PrintCommLog
+import net.netconomy.tools.restflow.impl.ProfileLoader
+import net.netconomy.tools.restflow.impl.QuietCommLog
+import net.netconomy.tools.restflow.impl.RestFlowScripts
+import net.netconomy.tools.restflow.impl.RestFlowScripts.ReadOnlyBinding
+import org.codehaus.groovy.runtime.StackTraceUtils
+
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.Channels
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+import static net.netconomy.tools.restflow.frontend.DaemonProtocol.*
+
+/**
+ * A long-lived process that runs scripts for {@link RestFlowClient}, so
+ * the JVM, the Groovy runtime, the compiled profiles, the TLS setup and
+ * the pooled connections stay warm between invocations. It listens on a
+ * Unix domain socket (see {@link DaemonProtocol#socketPath()}), which
+ * only the owner may access.
+ *
+ * <p>Each run gets an {@link RestFlow#isolate(net.netconomy.tools.restflow.impl.CommLog)
+ * isolated} flow of a flow kept per list of profile paths, and a new
+ * shell, so the classes of the scripts can be unloaded after the run. The
+ * log and the {@code println} output of the scripts are sent to the
+ * client, output written directly to {@code System.out} goes to the
+ * daemon's log. Relative paths are resolved against the client's working
+ * directory for the script and profile paths only.
+ *
+ * <p>Options changing global settings ({@code -compile-static}, {@code
+ * -script-cache}) stay in effect for later runs, set them when starting
+ * the daemon.
+ */
+class RestFlowDaemon {
+
+    private final Path socket
+    private final ConcurrentMap<List<Path>, RestFlow> flows = new ConcurrentHashMap<>()
+    private final JfrRequestListener jfrListener = new JfrRequestListener()
+    private final ExecutorService executor
+    private volatile ServerSocketChannel server = null
+    private volatile boolean stopped = false
+
+    RestFlowDaemon(Path socket) {
+        this.socket = socket
+        def count = new AtomicInteger()
+        executor = Executors.newCachedThreadPool({Runnable r ->
+            def t = new Thread(r, "restflow-daemon-${count.incrementAndGet()}")
+            t.daemon = true
+            t
+        } as ThreadFactory)
+    }
+
+    static void main(String[] args) {
+        CommandLine.setupSwing()
+        HttpTransports.disableJdkHostnameVerification()
+        // only the global options are used here
+        new CommandLine().readArgs(args)
+        if (!DaemonProtocol.available) {
+            System.err.println 'The RESTflow daemon requires Java 16+'
+            System.exit(1)
+        }
+        new RestFlowDaemon(DaemonProtocol.socketPath()).run()
+    }
+
+    void run() {
+        prepareSocket()
+        server = DaemonProtocol.bind(socket)
+        try {
+            // the socket runs arbitrary scripts, only the owner may connect
+            ownerOnly(socket, 'rw-------')
+        } catch (Exception e) {
+            server.close()
+            Files.deleteIfExists(socket)
+            throw e
+        }
+        def shutdownHook = new Thread({cleanup()}, 'restflow-daemon-shutdown')
+        Runtime.runtime.addShutdownHook(shutdownHook)
+        println "RESTflow daemon listening on $socket"
+        try {
+            while (!stopped) {
+                SocketChannel channel
+                try {
+                    channel = server.accept()
+                } catch (ClosedChannelException ignored) {
+                    break
+                }
+                executor.submit({handle(channel)} as Runnable)
+            }
+        } finally {
+            Runtime.runtime.removeShutdownHook(shutdownHook)
+            cleanup()
+        }
+        println 'RESTflow daemon stopped'
+    }
+
+    void stop() {
+        stopped = true
+        server?.close()
+    }
+
+    private void prepareSocket() {
+        def dir = socket.toAbsolutePath().parent
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir)
+        }
+        // also if the directory exists, e.g. ~/.cache/restflow created by the script cache
+        ownerOnly(dir, 'rwx------')
+        if (Files.exists(socket)) {
+            try {
+                DaemonProtocol.connect(socket).close()
+                throw new IllegalStateException("A RESTflow daemon is already running on $socket")
+            } catch (IOException ignored) {
+                // stale socket of a daemon that didn't shut down properly
+                Files.delete(socket)
+            }
+        }
+    }
+
+    private static void ownerOnly(Path path, String permissions) {
+        def expected = PosixFilePermissions.fromString(permissions)
+        try {
+            if (Files.getPosixFilePermissions(path) != expected) {
+                Files.setPosixFilePermissions(path, expected)
+            }
+        } catch (UnsupportedOperationException ignored) {
+            // not a POSIX file system
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot restrict the permissions of $path to $permissions: $e", e)
+        }
+    }
+
+    private void cleanup() {
+        stop()
+        executor.shutdownNow()
+        flows.values().each {it.close()}
+        flows.clear()
+        Files.deleteIfExists(socket)
+    }
+
+    private void handle(SocketChannel channel) {
+        channel.withCloseable {
+            def input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))
+            def output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))
+            def stdout = new PrintStream(frameOutputStream(output, FRAME_STDOUT), true, 'UTF-8')
+            def stderr = new PrintStream(frameOutputStream(output, FRAME_STDERR), true, 'UTF-8')
+            int status
+            try {
+                def request = readRequest(input)
+                switch (request[0]) {
+                case CMD_RUN:
+                    status = runScripts(Paths.get(request[1]), request.subList(2, request.size()), stdout, stderr)
+                    break
+                case CMD_STOP:
+                    stdout.println 'Stopping RESTflow daemon'
+                    stop()
+                    status = 0
+                    break
+                default:
+                    stderr.println "Unknown command: ${request[0]}"
+                    status = 1
+                }
+            } catch (Throwable e) {
+                if (e instanceof VirtualMachineError) {
+                    throw e
+                }
+                StackTraceUtils.deepSanitize(e).printStackTrace(stderr)
+                status = 1
+            }
+            writeExit(output, status)
+        }
+    }
+
+    private int runScripts(Path workingDirectory, List<String> args, PrintStream stdout, PrintStream stderr) {
+        // usage and errors go to the client
+        def cmdLine = new CommandLine({throw new InvalidArguments(it as int)}, stderr)
+        try {
+            cmdLine.readArgs(args)
+        } catch (InvalidArguments e) {
+            return e.status
+        }
+        if (!cmdLine.files) {
+            stderr.println 'No scripts'
+            return 1
+        }
+        List<Path> profilePaths = cmdLine.profilePaths.collect {workingDirectory.resolve(it).normalize()}
+        def base = flows.computeIfAbsent(profilePaths) {
+            new RestFlow(new ProfileLoader(RestFlowDaemon.classLoader, profilePaths), QuietCommLog.INSTANCE)
+        }
+        // a new shell for each run, so the classes of the scripts can be unloaded
+        GroovyShell shell = RestFlowScripts.newGroovyShell(new ReadOnlyBinding(), RestFlowDaemon.classLoader, false)
+        def har = cmdLine.harFile ? new HarWriter(workingDirectory.resolve(cmdLine.harFile), cmdLine.harBodies) : null
+        def flow = base.isolate(new PrintCommLog(out: stdout))
+        try {
+            if (har != null) {
+                flow.requestListeners.add(har)
+            }
+            if (cmdLine.jfr) {
+                flow.requestListeners.add(jfrListener)
+            }
+            if (cmdLine.virtualThreads) {
+                flow.virtualThreads = true
+            }
+            def files = cmdLine.files.collect {workingDirectory.resolve(it).toString()}
+            if (cmdLine.parallel > 1 && files.size() > 1) {
+                return new ParallelRunner(flow, shell, cmdLine.parallel, stdout).run(files) ? 0 : 1
+            }
+            for (f in files) {
+                RestFlowScripts.run(RestFlowScripts.parse(shell, new ReadOnlyBinding(out: stdout), flow,
+                                                          Paths.get(f).toUri()))
+            }
+            return 0
+        } catch (Throwable e) {
+            if (e instanceof VirtualMachineError) {
+                throw e
+            }
+            StackTraceUtils.deepSanitize(e).printStackTrace(stderr)
+            return 1
+        } finally {
+            flow.close()
+            har?.close()
+        }
+    }
+
+    private static final class InvalidArguments extends RuntimeException {
+        final int status
+
+        InvalidArguments(int status) {
+            super(null, null, false, false)
+            this.status = status
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package net.netconomy.tools.restflow.frontend
+
+import net.netconomy.tools.restflow.dsl.RestFlow
+import net.netconomy.tools.restflow.impl.HarWriter
+import net.netconomy.tools.restflow.impl.HttpTransports
+import net.netconomy.tools.restflow.impl.JfrRequestListener
+import net.netconomy.tools.restflow.impl.ProfileLoader
+import net.netconomy.tools.restflow.impl.QuietCommLog
+import net.netconomy.tools.restflow.impl.RestFlowScript
+import net.netconomy.tools.restflow.impl.RestFlowScripts
+import net.netconomy.tools.restflow.impl.RestFlowScripts.ReadOnlyBinding
+import net.netconomy.tools.restflow.impl.VirtualThreads
+
+import java.nio.file.Paths
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Runs RESTflow scripts as load test: each worker runs the scripts
+ * repeatedly in its own RESTflow instance, the flow is reset before each
+ * iteration. Requests are aggregated by their label (method and path with
+ * IDs replaced by <code>{id}</code>).
+ *
+ * <p>With a target rate, iterations are scheduled at fixed intervals over
+ * all workers and the latencies are measured from the scheduled start of
+ * the iteration, i.e. if a worker falls behind the schedule, the delay is
+ * included in the latencies (coordinated omission correction). A ramp-up
+ * increases the rate linearly, without target rate, the workers are
+ * started one by one over the ramp-up time.
+ */
+class RestFlowLoad {
+
+    private final LoadCommandLine options
+    private final LoadStatistics statistics = new LoadStatistics()
+    private final AtomicLong nextIteration = new AtomicLong()
+    private final AtomicLong completedIterations = new AtomicLong()
+    private HarWriter har = null
+    private final JfrRequestListener jfrListener = new JfrRequestListener()
+    private volatile boolean stopped = false
+    private long startNanos
+    private long lastReportNanos
+
+    RestFlowLoad(LoadCommandLine options) {
+        this.options = options
+    }
+
+    static void main(String[] args) {
+        CommandLine.setupSwing()
+        HttpTransports.disableJdkHostnameVerification()
+        def cmdLine = new LoadCommandLine().readArgs(args)
+        if (!cmdLine.files) {
+            cmdLine.usage()
+            cmdLine.exit(1)
+        }
+        new RestFlowLoad(cmdLine).run()
+    }
+
+    void run() {
+        GroovyShell shell = RestFlowScripts.newGroovyShell(new ReadOnlyBinding(), RestFlowLoad.classLoader, false)
+        def profileLoader = new ProfileLoader(RestFlowLoad.classLoader, options.profilePaths)
+        List<Class<? extends RestFlowScript>> scripts = options.files.collect {
+            (RestFlowScripts.parseScript(shell, new GroovyCodeSource(Paths.get(it).toUri())) as RestFlowScript).getClass()
+        }
+        if (options.harFile) {
+            har = new HarWriter(options.harFile, options.harBodies)
+        }
+        ExecutorService workers
+        if (options.virtualThreads) {
+            workers = VirtualThreads.newExecutor('restflow-load-')
+        } else {
+            def count = new AtomicInteger()
+            workers = Executors.newFixedThreadPool(options.workers, {Runnable r ->
+                def t = new Thread(r, "restflow-load-${count.incrementAndGet()}")
+                t.daemon = true
+                t
+            } as ThreadFactory)
+        }
+        // report what we have if interrupted by Ctrl-C
+        def shutdownHook = new Thread({
+            stopped = true
+            har?.close()
+            report(System.out)
+        }, 'restflow-load-shutdown')
+        Runtime.runtime.addShutdownHook(shutdownHook)
+        startNanos = System.nanoTime()
+        lastReportNanos = startNanos
+        def reporter = startReporter()
+        try {
+            List<Future<?>> futures = (0..<options.workers).collect { int w ->
+                workers.submit({runWorker(w, shell, profileLoader, scripts)} as Runnable)
+            }
+            futures.each {it.get()}
+        } finally {
+            stopped = true
+            reporter?.shutdownNow()
+            workers.shutdownNow()
+            Runtime.runtime.removeShutdownHook(shutdownHook)
+            har?.close()
+        }
+        report(System.out)
+    }
+
+    private void runWorker(int worker, GroovyShell shell, ProfileLoader profileLoader,
+                           List<Class<? extends RestFlowScript>> scripts) {
+        def recorder = statistics.recorder()
+        new RestFlow(profileLoader, QuietCommLog.INSTANCE).withCloseable { RestFlow flow ->
+            flow.requestListeners.add(recorder)
+            if (har != null) {
+                flow.requestListeners.add(har)
+            }
+            if (options.jfr) {
+                flow.requestListeners.add(jfrListener)
+            }
+            flow.virtualThreads = options.virtualThreads
+            if (!options.rps && options.rampUp) {
+                sleepUntil(startNanos + (options.rampUp.toNanos() * worker).intdiv(options.workers))
+            }
+            def deadline = options.duration == null ? Long.MAX_VALUE : startNanos + options.duration.toNanos()
+            def iterations = options.effectiveIterations
+            while (!stopped) {
+                long iteration = nextIteration.getAndIncrement()
+                if (iterations && iteration >= iterations) {
+                    break
+                }
+                long scheduled = options.rps ? startNanos + scheduleOffset(iteration) : System.nanoTime()
+                if (scheduled >= deadline) {
+                    break
+                }
+                sleepUntil(scheduled)
+                if (Thread.currentThread().isInterrupted()) {
+                    break
+                }
+                recorder.lagNanos = Math.max(0L, System.nanoTime() - scheduled)
+                boolean failed = false
+                try {
+                    flow.reset()
+                    for (s in scripts) {
+                        def script = s.getDeclaredConstructor().newInstance()
+                        RestFlowScripts.run(RestFlowScripts.init(shell, script, new ReadOnlyBinding(), flow))
+                    }
+                } catch (Exception e) {
+                    failed = true
+                    statistics.error(e)
+                }
+                statistics.iterations.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled), failed)
+                completedIterations.incrementAndGet()
+            }
+        }
+    }
+
+    /**
+     * The scheduled start of an iteration relative to the start of the
+     * run. During the ramp-up, the rate increases linearly from 0 to the
+     * target rate.
+     */
+    private long scheduleOffset(long iteration) {
+        double rate = options.rps
+        double rampUp = options.rampUp.toNanos() / 1e9d
+        double rampUpIterations = rate * rampUp / 2
+        double seconds
+        if (iteration < rampUpIterations) {
+            seconds = Math.sqrt(2 * rampUp * iteration / rate)
+        } else {
+            seconds = rampUp + (iteration - rampUpIterations) / rate
+        }
+        (seconds * 1e9d) as long
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining
+        while ((remaining = nanoTime - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining)
+        }
+    }
+
+    private def startReporter() {
+        if (options.reportInterval.isZero()) {
+            return null
+        }
+        def reporter = Executors.newSingleThreadScheduledExecutor({Runnable r ->
+            def t = new Thread(r, 'restflow-load-report')
+            t.daemon = true
+            t
+        } as ThreadFactory)
+        long interval = options.reportInterval.toMillis()
+        reporter.scheduleAtFixedRate({reportInterval(System.out)}, interval, interval, TimeUnit.MILLISECONDS)
+        reporter
+    }
+
+    private synchronized void reportInterval(PrintStream out) {
+        long now = System.nanoTime()
+        double seconds = (now - lastReportNanos) / 1e9d
+        lastReportNanos = now
+        statistics.requests.each {it.nextInterval()}
+        def requests = statistics.allRequests.nextInterval()
+        def iterations = statistics.iterations.nextInterval()
+        out.println String.format(Locale.ROOT,
+                                  '[%7.1fs] iterations %d (%.1f/s, %d failed)  requests %.1f/s  errors %.2f%%' +
+                                          '  p50 %s  p99 %s  p99.9 %s',
+                                  (now - startNanos) / 1e9d, completedIterations.get(),
+                                  iterations.histogram.count / seconds, iterations.errors.sum(),
+                                  requests.histogram.count / seconds,
+                                  percent(requests.errors.sum(), requests.histogram.count),
+                                  millis(requests.histogram.percentile(50)),
+                                  millis(requests.histogram.percentile(99)),
+                                  millis(requests.histogram.percentile(99.9)))
+        out.flush()
+    }
+
+    synchronized void report(PrintStream out) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9d
+        out.println()
+        out.println String.format(Locale.ROOT, 'Finished %d iterations with %d workers in %.1fs%s',
+                                  completedIterations.get(), options.workers, seconds,
+                                  options.rps ? ' (latencies corrected for coordinated omission)' : '')
+        def series = statistics.requests + [statistics.allRequests, statistics.iterations]
+        int width = Math.max(20, series*.label*.length().max())
+        def format = "%-${width}s %8s %9s %7s %9s %9s %9s %9s %9s %9s"
+        out.println String.format(Locale.ROOT, format,
+                                  'label', 'count', 'rate/s', 'err%', 'mean', 'p50', 'p90', 'p99', 'p99.9', 'max')
+        series.each { s ->
+            def h = s.total
+            out.println String.format(Locale.ROOT, format,
+                                      s.label, h.count, String.format(Locale.ROOT, '%.1f', h.count / seconds),
+                                      String.format(Locale.ROOT, '%.2f', percent(s.errors.sum(), h.count)),
+                                      millis(h.mean as long), millis(h.percentile(50)), millis(h.percentile(90)),
+                                      millis(h.percentile(99)), millis(h.percentile(99.9)), millis(h.max))
+        }
+        def errors = statistics.errorMessages
+        if (errors) {
+            out.println()
+            out.println 'Errors:'
+            errors.sort {-it.value}.each {msg, count -> out.println String.format(Locale.ROOT, '%8d  %s', count, msg)}
+        }
+        out.flush()
+    }
+
+    private static double percent(long count, long total) {
+        total ? count * 100d / total : 0
+    }
+
+    private static String millis(long micros) {
+        String.format(Locale.ROOT, '%.2fms', micros / 1000d)
+    }
+}
@@ -1,9 +1,16 @@
 package net.netconomy.tools.restflow.frontend
 
 import net.netconomy.tools.restflow.dsl.RestFlow
+import net.netconomy.tools.restflow.impl.AsyncCommLog
+import net.netconomy.tools.restflow.impl.CommLog
+import net.netconomy.tools.restflow.impl.HarWriter
+import net.netconomy.tools.restflow.impl.HttpTransports
+import net.netconomy.tools.restflow.impl.JfrRequestListener
+import net.netconomy.tools.restflow.impl.PrintCommLog
 import net.netconomy.tools.restflow.impl.ProfileLoader
 import net.netconomy.tools.restflow.impl.RestFlowScripts
 import net.netconomy.tools.restflow.impl.RestFlowScripts.ReadOnlyBinding
+import net.netconomy.tools.restflow.impl.VirtualThreads
 
 import java.nio.file.Paths
 
@@ -11,11 +18,49 @@ class RestFlowRunner {
 
     static void main(String[] args) {
         CommandLine.setupSwing()
+        HttpTransports.disableJdkHostnameVerification()
         def cmdLine = new CommandLine().readArgs(args)
         GroovyShell shell = RestFlowScripts.newGroovyShell(new ReadOnlyBinding(), RestFlowRunner.classLoader, false)
-        RestFlow restFlow = new RestFlow(new ProfileLoader(RestFlowRunner.classLoader, cmdLine.profilePaths))
-        for (f in cmdLine.files) {
-            RestFlowScripts.run(RestFlowScripts.parse(shell, restFlow, Paths.get(f).toUri()))
+        CommLog log = new PrintCommLog()
+        if (cmdLine.asyncLog != null) {
+            // System.out flushes each line, buffer and let the log flush once per batch
+            def out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false)
+            log = new AsyncCommLog(new PrintCommLog(out: out), cmdLine.asyncLog)
+        }
+        RestFlow restFlow = new RestFlow(new ProfileLoader(RestFlowRunner.classLoader, cmdLine.profilePaths), log)
+        def har = cmdLine.harFile ? new HarWriter(cmdLine.harFile, cmdLine.harBodies) : null
+        if (har != null) {
+            restFlow.requestListeners.add(har)
+        }
+        if (cmdLine.jfr) {
+            restFlow.requestListeners.add(new JfrRequestListener())
+        }
+        def runScripts = {
+            for (f in cmdLine.files) {
+                RestFlowScripts.run(RestFlowScripts.parse(shell, restFlow, Paths.get(f).toUri()))
+            }
+        }
+        boolean success = true
+        try {
+            if (cmdLine.virtualThreads || VirtualThreads.enabledByDefault) {
+                restFlow.virtualThreads = true
+            }
+            if (cmdLine.parallel > 1 && cmdLine.files.size() > 1) {
+                success = new ParallelRunner(restFlow, shell, cmdLine.parallel).run(cmdLine.files)
+            } else if (restFlow.virtualThreads) {
+                VirtualThreads.call('restflow-script', runScripts)
+            } else {
+                runScripts()
+            }
+        } finally {
+            restFlow.close()
+            har?.close()
+            if (log instanceof Closeable) {
+                log.close()
+            }
+        }
+        if (!success) {
+            cmdLine.exit(1)
         }
     }
 }
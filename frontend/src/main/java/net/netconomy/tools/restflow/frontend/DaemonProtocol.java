@@ -0,0 +1,205 @@
+package net.netconomy.tools.restflow.frontend;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The protocol between {@link RestFlowClient} and the RESTflow daemon.
+ * They talk over a Unix domain socket (JDK 16+), RESTflow is built for
+ * Java 11, the API is therefore looked up reflectively.
+ *
+ * <p>The client sends the command, its working directory and the
+ * arguments. The daemon answers with frames: a type byte followed by an
+ * int length and the output bytes for {@link #FRAME_STDOUT} and {@link
+ * #FRAME_STDERR} or by the exit status for {@link #FRAME_EXIT}, which is
+ * always the last frame.
+ */
+public final class DaemonProtocol {
+
+    public static final String SOCKET_PROPERTY = "restflow.daemon.socket";
+
+    public static final int VERSION = 1;
+
+    public static final String CMD_RUN = "run";
+    public static final String CMD_STOP = "stop";
+
+    public static final byte FRAME_STDOUT = 'O';
+    public static final byte FRAME_STDERR = 'E';
+    public static final byte FRAME_EXIT = 'X';
+
+    private static final ProtocolFamily UNIX;
+    private static final MethodHandle ADDRESS_OF;
+    private static final MethodHandle OPEN_CHANNEL;
+    private static final MethodHandle OPEN_SERVER_CHANNEL;
+
+    static {
+        ProtocolFamily unix = null;
+        MethodHandle addressOf = null;
+        MethodHandle openChannel = null;
+        MethodHandle openServerChannel = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            addressOf = lookup.findStatic(addressClass, "of", MethodType.methodType(addressClass, Path.class));
+            openChannel = lookup.findStatic(SocketChannel.class, "open",
+                    MethodType.methodType(SocketChannel.class, ProtocolFamily.class));
+            openServerChannel = lookup.findStatic(ServerSocketChannel.class, "open",
+                    MethodType.methodType(ServerSocketChannel.class, ProtocolFamily.class));
+            unix = StandardProtocolFamily.valueOf("UNIX");
+        } catch (ReflectiveOperationException | IllegalArgumentException ignored) {
+            unix = null;
+        }
+        UNIX = unix;
+        ADDRESS_OF = addressOf;
+        OPEN_CHANNEL = openChannel;
+        OPEN_SERVER_CHANNEL = openServerChannel;
+    }
+
+    private DaemonProtocol() {
+    }
+
+    public static boolean isAvailable() {
+        return UNIX != null;
+    }
+
+    /**
+     * The socket: the system property {@value #SOCKET_PROPERTY}, defaults
+     * to {@code $XDG_RUNTIME_DIR/restflow/daemon.sock} or {@code
+     * ~/.cache/restflow/daemon.sock}.
+     */
+    public static Path socketPath() {
+        String path = System.getProperty(SOCKET_PROPERTY);
+        if (path != null && !path.isEmpty()) {
+            return Paths.get(path);
+        }
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        Path dir = runtimeDir != null && !runtimeDir.isEmpty()
+                   ? Paths.get(runtimeDir)
+                   : Paths.get(System.getProperty("user.home"), ".cache");
+        return dir.resolve("restflow").resolve("daemon.sock");
+    }
+
+    public static SocketChannel connect(Path socket) throws IOException {
+        checkAvailable();
+        SocketChannel channel = (SocketChannel)invoke(OPEN_CHANNEL, UNIX);
+        try {
+            channel.connect(address(socket));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    public static ServerSocketChannel bind(Path socket) throws IOException {
+        checkAvailable();
+        ServerSocketChannel channel = (ServerSocketChannel)invoke(OPEN_SERVER_CHANNEL, UNIX);
+        try {
+            channel.bind(address(socket));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    public static void writeRequest(DataOutputStream out, String command, String workingDirectory,
+                                    List<String> args) throws IOException {
+        out.writeInt(VERSION);
+        out.writeUTF(command);
+        out.writeUTF(workingDirectory);
+        out.writeInt(args.size());
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a request: the command, the working directory and the
+     * arguments.
+     */
+    public static List<String> readRequest(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version: " + version);
+        }
+        List<String> request = new ArrayList<>();
+        request.add(in.readUTF());
+        request.add(in.readUTF());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            request.add(in.readUTF());
+        }
+        return request;
+    }
+
+    public static void writeExit(DataOutputStream out, int status) throws IOException {
+        synchronized (out) {
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    /**
+     * An output stream that writes frames of the given type. Closing it
+     * doesn't close the underlying stream.
+     */
+    public static OutputStream frameOutputStream(DataOutputStream out, byte type) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return;
+                }
+                synchronized (out) {
+                    out.writeByte(type);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                    out.flush();
+                }
+            }
+        };
+    }
+
+    private static SocketAddress address(Path socket) throws IOException {
+        return (SocketAddress)invoke(ADDRESS_OF, socket);
+    }
+
+    private static Object invoke(MethodHandle handle, Object arg) throws IOException {
+        try {
+            return handle.invoke(arg);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void checkAvailable() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16+");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package net.netconomy.tools.restflow.frontend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A thin client for the {@code RestFlowDaemon}: submits the arguments (the
+ * same as for {@code RestFlowRunner}) to the daemon and prints its output.
+ * Exits with the exit status of the daemon's run. If no daemon is running,
+ * one is started in the background, using the same class path and the
+ * {@code restflow.*} system properties of the client.
+ *
+ * <p>This is written in Java and doesn't touch any Groovy or RESTflow
+ * classes, so it starts quickly.
+ */
+@SuppressWarnings("UseOfSystemOutOrSystemErr")
+public class RestFlowClient {
+
+    private static final String DAEMON_MAIN_CLASS = "net.netconomy.tools.restflow.frontend.RestFlowDaemon";
+    private static final long START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    public static void main(String[] args) throws Exception {
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        boolean stop = argList.remove("-stop");
+        if (!stop && argList.isEmpty()) {
+            System.err.println("Usage: RestFlowClient -stop | <RestFlowRunner options and scripts>");
+            System.exit(1);
+        }
+        if (!DaemonProtocol.isAvailable()) {
+            System.err.println("The RESTflow daemon requires Java 16+");
+            System.exit(1);
+        }
+        Path socket = DaemonProtocol.socketPath();
+        SocketChannel channel = connect(socket, !stop);
+        if (channel == null) {
+            System.err.println("No RESTflow daemon running on " + socket);
+            System.exit(stop ? 0 : 1);
+        }
+        System.exit(submit(channel, stop ? DaemonProtocol.CMD_STOP : DaemonProtocol.CMD_RUN, argList));
+    }
+
+    private static SocketChannel connect(Path socket, boolean start) throws IOException, InterruptedException {
+        try {
+            return DaemonProtocol.connect(socket);
+        } catch (IOException e) {
+            if (!start) {
+                return null;
+            }
+        }
+        Process daemon = startDaemon(socket);
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return DaemonProtocol.connect(socket);
+            } catch (IOException e) {
+                if (!daemon.isAlive()) {
+                    throw new IOException("The RESTflow daemon exited with status " + daemon.exitValue()
+                            + ", see " + logFile(socket));
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Timeout waiting for the RESTflow daemon, see " + logFile(socket));
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static Process startDaemon(Path socket) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        System.getProperties().stringPropertyNames().stream()
+                .filter(n -> n.startsWith("restflow."))
+                .sorted()
+                .forEach(n -> command.add("-D" + n + "=" + System.getProperty(n)));
+        command.add("-D" + DaemonProtocol.SOCKET_PROPERTY + "=" + socket);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(DAEMON_MAIN_CLASS);
+        Path log = logFile(socket);
+        Files.createDirectories(log.getParent());
+        System.err.println("Starting RESTflow daemon, log: " + log);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private static Path logFile(Path socket) {
+        return socket.resolveSibling("daemon.log");
+    }
+
+    private static int submit(SocketChannel channel, String command, List<String> args) throws IOException {
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DaemonProtocol.writeRequest(out, command, System.getProperty("user.dir"), args);
+            byte[] buf = new byte[8192];
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    System.err.println("Connection to the RESTflow daemon lost");
+                    return 1;
+                }
+                if (type == DaemonProtocol.FRAME_EXIT) {
+                    return in.readInt();
+                }
+                OutputStream target = type == DaemonProtocol.FRAME_STDERR ? System.err : System.out;
+                int remaining = in.readInt();
+                while (remaining > 0) {
+                    int n = in.read(buf, 0, Math.min(buf.length, remaining));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    target.write(buf, 0, n);
+                    remaining -= n;
+                }
+                target.flush();
+            }
+        }
+    }
+}
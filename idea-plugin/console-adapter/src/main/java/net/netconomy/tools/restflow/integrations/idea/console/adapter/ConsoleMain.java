@@ -16,8 +16,10 @@ import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import net.netconomy.tools.restflow.dsl.RestFlow;
+import net.netconomy.tools.restflow.impl.HttpTransports;
 import net.netconomy.tools.restflow.impl.ProfileLoader;
 import net.netconomy.tools.restflow.impl.RestFlowScripts;
+import net.netconomy.tools.restflow.impl.VirtualThreads;
 
 
 /**
@@ -33,7 +35,9 @@ public class ConsoleMain {
     private final PrintStream stderr;
 
     private final boolean echoScript;
+    private final boolean virtualThreads;
     private final RestFlow restFlow;
+    private final SnippetCache snippets;
 
     private ConsoleMain(List<String> args, InputStream stdin, PrintStream stdout, PrintStream stderr) {
         this.stdin = stdin;
@@ -41,6 +45,7 @@ public class ConsoleMain {
         this.stderr = stderr;
         args = new ArrayList<>(args);
         echoScript = args.remove(Interface.ARG_ECHO_SCRIPT);
+        virtualThreads = args.remove(Interface.ARG_VIRTUAL_THREADS) || VirtualThreads.isEnabledByDefault();
         List<Path> profilePaths = new ArrayList<>();
         int argIndex = args.indexOf(Interface.ARG_PROFILES);
         if (argIndex >= 0) {
@@ -53,10 +58,15 @@ public class ConsoleMain {
         }
         restFlow = new RestFlow(new ProfileLoader(ConsoleMain.class.getClassLoader(), profilePaths),
                 new IdeaCommLog(stdout));
+        if (virtualThreads) {
+            restFlow.setVirtualThreads(true);
+        }
+        snippets = new SnippetCache(ConsoleMain.class.getClassLoader(), SnippetCache.DEFAULT_CAPACITY);
     }
 
     @SuppressWarnings("ZeroLengthArrayAllocation")
     public static void main(String[] args) throws Exception {
+        HttpTransports.disableJdkHostnameVerification();
         InputStream stdin = System.in;
         PrintStream stdout = System.out;
         PrintStream stderr = System.err;
@@ -105,7 +115,12 @@ public class ConsoleMain {
                 });
             }
             stdout.flush();
-            RestFlowScripts.run(RestFlowScripts.parse(restFlow, script, msg));
+            if (virtualThreads) {
+                VirtualThreads.call("restflow-script",
+                        () -> RestFlowScripts.run(snippets.parse(restFlow, script, msg)));
+            } else {
+                RestFlowScripts.run(snippets.parse(restFlow, script, msg));
+            }
         } catch (Throwable e) {
             if (e instanceof VirtualMachineError || e instanceof LinkageError) {
                 throw e;
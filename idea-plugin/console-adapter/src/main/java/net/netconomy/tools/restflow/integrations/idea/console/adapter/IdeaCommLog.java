@@ -1,6 +1,9 @@
 package net.netconomy.tools.restflow.integrations.idea.console.adapter;
 
+import java.io.Flushable;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
@@ -10,10 +13,11 @@ import net.netconomy.tools.restflow.impl.CommLog;
 import net.netconomy.tools.restflow.impl.HttpBody;
 
 
-final class IdeaCommLog implements CommLog {
+final class IdeaCommLog implements CommLog, Flushable {
 
     private static final Pattern LINE_RE = Pattern.compile("(\\n|\\r\\n?)", Pattern.MULTILINE);
     public static final int BASE64_LINE_LEN = 120;
+    private static final int BASE64_LINE_BYTES = BASE64_LINE_LEN / 4 * 3;
 
     private volatile boolean brief;
 
@@ -38,6 +42,17 @@ final class IdeaCommLog implements CommLog {
         return brief;
     }
 
+    @Override
+    public boolean isEnabled(Level level) {
+        return true;
+    }
+
+    @Override
+    public BodyDetail getBodyDetail() {
+        // the console shows bodies even in brief mode
+        return BodyDetail.FULL;
+    }
+
     @Override
     public void info(Object... msg) {
         print(Interface.PREFIX_OUT_STDOUT, msg);
@@ -82,6 +97,14 @@ final class IdeaCommLog implements CommLog {
         if (body.isEmpty()) {
             logger.accept("BODY EMPTY");
             return;
+        } else if (body.isStreamed()) {
+            // no content lines, the console shows an empty binary body
+            logger.accept("BODY BINARY streamed "
+                    + (body.getContentLength() < 0 ? "unknown length" : body.getContentLength() + " bytes")
+                    + ": " + body.getMimeType());
+        } else if (body.isSpilled()) {
+            // too large for the console, don't load it
+            logger.accept("BODY BINARY spilled " + body.getContentLength() + " bytes: " + body.getMimeType());
         } else if (body.getContent() != null) {
             String type = "BODY TEXT";
             if (pretty && body.isPrettyPrintable()) {
@@ -94,12 +117,15 @@ final class IdeaCommLog implements CommLog {
             logger.accept(type);
             Stream.of(lines).forEach(logger);
         } else {
-            logger.accept("BODY BINARY " + body.getRawContent().length + " bytes: " + body.getMimeType());
-            String base64 = Base64.getEncoder().encodeToString(body.getRawContent());
-            int mark = 0;
-            while (mark < base64.length()) {
-                logger.accept(base64.substring(mark, Math.min(mark + BASE64_LINE_LEN, base64.length())));
-                mark += BASE64_LINE_LEN;
+            logger.accept("BODY BINARY " + body.getContentLength() + " bytes: " + body.getMimeType());
+            // encode line by line from a view of the content, no copies of the whole body
+            ByteBuffer content = body.asByteBuffer();
+            Base64.Encoder encoder = Base64.getEncoder();
+            while (content.hasRemaining()) {
+                ByteBuffer line = content.slice();
+                line.limit(Math.min(BASE64_LINE_BYTES, content.remaining()));
+                content.position(content.position() + line.limit());
+                logger.accept(StandardCharsets.ISO_8859_1.decode(encoder.encode(line)).toString());
             }
         }
         logger.accept("BODY END");
@@ -113,6 +139,11 @@ final class IdeaCommLog implements CommLog {
         print(Interface.PREFIX_RUN, newMsg);
     }
 
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
     private void print(char head, Object... msg) {
         Util.splitMessage(msg).forEach(l -> {
             out.print(head);
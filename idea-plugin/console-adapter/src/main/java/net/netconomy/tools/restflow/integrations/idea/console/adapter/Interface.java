@@ -16,6 +16,7 @@ public class Interface {
 
     public static final String ARG_ECHO_SCRIPT = "-echo-script";
     public static final String ARG_PROFILES = "-profiles";
+    public static final String ARG_VIRTUAL_THREADS = "-virtual-threads";
 
     public static final char PREFIX_SCRIPT = '+';
     public static final char PREFIX_RUN = '.';
@@ -3,11 +3,17 @@ package net.netconomy.tools.restflow.integrations.idea.console.adapter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 class LinePrefixOutputStream extends OutputStream {
 
-    private final Object lock = new Object();
+    /**
+     * Not using {@code synchronized}: we write to the underlying stream
+     * while holding the lock, this would pin virtual threads.
+     */
+    private final Lock lock = new ReentrantLock();
     private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
     private final OutputStream out;
     private final int prefix;
@@ -22,7 +28,8 @@ class LinePrefixOutputStream extends OutputStream {
 
     @Override
     public void write(int b) throws IOException {
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (prefixRequired) {
                 buf.write(prefix);
                 prefixRequired = false;
@@ -44,6 +51,8 @@ class LinePrefixOutputStream extends OutputStream {
             } finally {
                 hadCr = false;
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -55,10 +64,13 @@ class LinePrefixOutputStream extends OutputStream {
 
     @Override
     public void flush() throws IOException {
-        synchronized (lock) {
+        lock.lock();
+        try {
             buf.writeTo(out);
             buf.reset();
             out.flush();
+        } finally {
+            lock.unlock();
         }
     }
 }
@@ -0,0 +1,132 @@
+package net.netconomy.tools.restflow.integrations.idea.console.adapter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import net.netconomy.tools.restflow.dsl.RestFlow;
+import net.netconomy.tools.restflow.impl.RestFlowScript;
+import net.netconomy.tools.restflow.impl.RestFlowScripts;
+
+
+/**
+ * Compiles the snippets of a console session using one long-lived shell.
+ * The classes of the most recently used snippets are kept, running an
+ * identical snippet again doesn't compile it again. The classes of
+ * evicted snippets are removed from the class loader and Groovy's meta
+ * class registry, so they can be unloaded.
+ */
+final class SnippetCache {
+
+    static final int DEFAULT_CAPACITY = 32;
+
+    private final SnippetClassLoader classLoader;
+    private final GroovyShell shell;
+    private final Map<Key, List<Class<?>>> snippets;
+
+    SnippetCache(ClassLoader parent, int capacity) {
+        CompilerConfiguration config = RestFlowScripts.newCompilerConfiguration(true);
+        classLoader = new SnippetClassLoader(parent, config);
+        // the shell uses our class loader because the configuration is the same
+        shell = RestFlowScripts.newGroovyShell(new RestFlowScripts.ReadOnlyBinding(), config, classLoader);
+        snippets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Class<?>>> eldest) {
+                if (size() > capacity) {
+                    eldest.getValue().forEach(classLoader::unload);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a new instance of the snippet's script class, compile it if
+     * necessary.
+     */
+    RestFlowScript parse(RestFlow restFlow, String script, String name) {
+        Key key = new Key(script, name);
+        List<Class<?>> classes = snippets.get(key);
+        if (classes == null) {
+            Set<Class<?>> before = new HashSet<>(classLoader.loadedClasses());
+            Class<?> scriptClass = shell.parse(
+                    new GroovyCodeSource(script, name, RestFlowScripts.DEFAULT_CODEBASE)).getClass();
+            classes = new ArrayList<>();
+            // the script class first, the others (closures, classes declared in the script) follow
+            classes.add(scriptClass);
+            for (Class<?> c : classLoader.loadedClasses()) {
+                if (c != scriptClass && !before.contains(c)) {
+                    classes.add(c);
+                }
+            }
+            snippets.put(key, classes);
+        }
+        @SuppressWarnings("unchecked")
+        Script instance = InvokerHelper.createScript((Class<? extends Script>)classes.get(0), new Binding());
+        return RestFlowScripts.init(shell, (RestFlowScript)instance, new RestFlowScripts.ReadOnlyBinding(), restFlow);
+    }
+
+    private static final class SnippetClassLoader extends GroovyClassLoader {
+
+        SnippetClassLoader(ClassLoader parent, CompilerConfiguration config) {
+            super(parent, config);
+        }
+
+        @SuppressWarnings("rawtypes")
+        List<Class<?>> loadedClasses() {
+            List<Class<?>> result = new ArrayList<>();
+            for (Class c : getLoadedClasses()) {
+                result.add(c);
+            }
+            return result;
+        }
+
+        void unload(Class<?> c) {
+            // a newer snippet with the same name may have replaced the entry
+            if (getClassCacheEntry(c.getName()) == c) {
+                removeClassCacheEntry(c.getName());
+            }
+            InvokerHelper.removeClass(c);
+        }
+    }
+
+    private static final class Key {
+        private final String script;
+        private final String name;
+
+        private Key(String script, String name) {
+            this.script = script;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key)o;
+            return script.equals(that.script) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(script, name);
+        }
+    }
+}